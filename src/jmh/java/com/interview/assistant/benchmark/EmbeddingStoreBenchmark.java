@@ -0,0 +1,136 @@
+package com.interview.assistant.benchmark;
+
+import com.interview.assistant.config.InterviewEmbeddingStore;
+import com.interview.assistant.service.RagService;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * InterviewEmbeddingStore 热路径：向量检索（有 / 无过滤下推）、BM25 关键词检索、批量写入、按面经删除。
+ * 语料经 RagService 真实索引路径构建；默认参数覆盖 堆内 / 堆外 × FLAT / HNSW × 不量化 / INT8 与 1 万 ~ 100 万块，
+ * 全组合耗时较长，日常用 -p 收窄（如 -p chunks=10000 -p index=hnsw）。
+ * 100 万块 × 1024 维约需 5GB 堆（堆外存储时为同等直接内存），fork 默认 -Xmx8g，机器内存不足时用 -jvmArgsAppend 覆盖。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx8g", "-XX:MaxDirectMemorySize=6g"})
+public class EmbeddingStoreBenchmark {
+
+    private static final int TOP_K = 25;
+    private static final double MIN_SCORE = 0.4;
+    /** 写入 / 删除压测用的面经 id 起点，与语料 id 不重叠 */
+    private static final long CHURN_BASE = 1L << 40;
+    private static final int CHURN_EXPERIENCES = 64;
+
+    @Param({"10000", "100000", "1000000"})
+    public int chunks;
+
+    @Param({"384", "1024"})
+    public int dimension;
+
+    @Param({"flat", "hnsw"})
+    public String index;
+
+    @Param({"heap", "off-heap"})
+    public String storage;
+
+    @Param({"none", "int8"})
+    public String quantization;
+
+    private InterviewEmbeddingStore store;
+    private StubEmbeddingModel model;
+    private Embedding[] queryEmbeddings;
+    private List<List<TextSegment>> churnSegments;
+    private List<List<Embedding>> churnEmbeddings;
+    private SplittableRandom rnd;
+    private long nextAddedId;
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        model = new StubEmbeddingModel(dimension);
+        store = new InterviewEmbeddingStore(new InterviewEmbeddingStore.Options()
+                .storage(InterviewEmbeddingStore.Storage.parse(storage))
+                .quantization(InterviewEmbeddingStore.Quantization.parse(quantization))
+                .index(InterviewEmbeddingStore.IndexType.parse(index)));
+        SyntheticCorpus.index(new RagService(model, store), SyntheticCorpus.experiences(chunks));
+        queryEmbeddings = new Embedding[SyntheticCorpus.QUERIES.length];
+        for (int i = 0; i < queryEmbeddings.length; i++) {
+            queryEmbeddings[i] = model.embed(SyntheticCorpus.QUERIES[i]).content();
+        }
+        rnd = new SplittableRandom(SyntheticCorpus.SEED);
+        churnSegments = new ArrayList<>();
+        churnEmbeddings = new ArrayList<>();
+        for (int i = 0; i < CHURN_EXPERIENCES; i++) {
+            List<TextSegment> segments = new ArrayList<>();
+            for (int c = 0; c < SyntheticCorpus.CHUNKS_PER_EXPERIENCE; c++) {
+                segments.add(SyntheticCorpus.segment(rnd, CHURN_BASE + i));
+            }
+            churnSegments.add(segments);
+            churnEmbeddings.add(model.embedAll(segments).content());
+            store.addAll(churnEmbeddings.get(i), segments);
+        }
+        nextAddedId = CHURN_BASE + CHURN_EXPERIENCES;
+    }
+
+    /** 撤销 add 压测写入的块，避免语料规模随迭代增长 */
+    @TearDown(Level.Iteration)
+    public void dropAdded() {
+        for (long id = CHURN_BASE + CHURN_EXPERIENCES; id < nextAddedId; id++) {
+            store.removeByExperienceId(id);
+        }
+        nextAddedId = CHURN_BASE + CHURN_EXPERIENCES;
+        store.compact();
+    }
+
+    @Benchmark
+    public List<EmbeddingMatch<TextSegment>> findRelevant() {
+        return store.findRelevant(nextQuery(), TOP_K, MIN_SCORE);
+    }
+
+    @Benchmark
+    public List<EmbeddingMatch<TextSegment>> findRelevantFiltered() {
+        int i = cursor;
+        return store.findRelevant(nextQuery(), TOP_K, MIN_SCORE, InterviewEmbeddingStore.SearchFilter.of(
+                SyntheticCorpus.COMPANIES[i % SyntheticCorpus.COMPANIES.length], null));
+    }
+
+    @Benchmark
+    public List<InterviewEmbeddingStore.KeywordMatch> keywordSearch() {
+        return store.keywordSearch(SyntheticCorpus.QUERIES[cursor++ % SyntheticCorpus.QUERIES.length]);
+    }
+
+    /** 一条面经的 3 个块整批写入（每次为新 experienceId） */
+    @Benchmark
+    public List<String> add() {
+        int i = cursor++ % CHURN_EXPERIENCES;
+        long id = nextAddedId++;
+        List<TextSegment> segments = new ArrayList<>(SyntheticCorpus.CHUNKS_PER_EXPERIENCE);
+        for (TextSegment seg : churnSegments.get(i)) {
+            segments.add(TextSegment.from(seg.text(), seg.metadata().copy().put("experienceId", String.valueOf(id))));
+        }
+        return store.addAll(churnEmbeddings.get(i), segments);
+    }
+
+    /** 删除一条面经的全部块后原样写回，库规模保持不变（含墓碑累积触发的后台压缩） */
+    @Benchmark
+    public List<String> removeByExperienceId() {
+        int i = cursor++ % CHURN_EXPERIENCES;
+        store.removeByExperienceId(CHURN_BASE + i);
+        return store.addAll(churnEmbeddings.get(i), churnSegments.get(i));
+    }
+
+    private Embedding nextQuery() {
+        return queryEmbeddings[cursor++ % queryEmbeddings.length];
+    }
+}
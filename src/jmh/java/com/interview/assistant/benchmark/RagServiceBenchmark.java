@@ -0,0 +1,76 @@
+package com.interview.assistant.benchmark;
+
+import com.interview.assistant.config.InterviewEmbeddingStore;
+import com.interview.assistant.config.TextAnalyzer;
+import com.interview.assistant.service.RagService;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RagService 检索管线端到端（向量召回 + 关键词召回 + 融合 + 过滤 + 分组）与切词。
+ * 使用两参构造：查询向量走缓存、检索结果不缓存，测到的是检索本身而非 Embedding 调用。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RagServiceBenchmark {
+
+    @Param({"10000", "100000"})
+    public int chunks;
+
+    @Param({"384", "1024"})
+    public int dimension;
+
+    private RagService ragService;
+    private String[] chunkTexts;
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        InterviewEmbeddingStore store = new InterviewEmbeddingStore();
+        ragService = new RagService(new StubEmbeddingModel(dimension), store);
+        SyntheticCorpus.index(ragService, SyntheticCorpus.experiences(chunks));
+        chunkTexts = store.allSegments().stream().limit(256).map(s -> s.text()).toArray(String[]::new);
+    }
+
+    @Benchmark
+    public List<String> search() {
+        return ragService.search(nextQuery(), 5);
+    }
+
+    @Benchmark
+    public List<String> searchFiltered() {
+        int i = cursor;
+        return ragService.search(nextQuery(), SyntheticCorpus.COMPANIES[i % SyntheticCorpus.COMPANIES.length], null, 5);
+    }
+
+    @Benchmark
+    public Map<String, String> searchStructuredForDeepQuestions() {
+        int i = cursor;
+        return ragService.searchStructuredForDeepQuestions(nextQuery(),
+                SyntheticCorpus.COMPANIES[i % SyntheticCorpus.COMPANIES.length],
+                SyntheticCorpus.DEPARTMENTS[i % SyntheticCorpus.DEPARTMENTS.length]);
+    }
+
+    /** 索引侧切词：一个块的全部词项 */
+    @Benchmark
+    public List<String> tokenizeChunk() {
+        return TextAnalyzer.terms(chunkTexts[cursor++ % chunkTexts.length]);
+    }
+
+    /** 查询侧切词：去重后的查询词项 */
+    @Benchmark
+    public List<String> tokenizeQuery() {
+        return TextAnalyzer.queryTerms(nextQuery());
+    }
+
+    private String nextQuery() {
+        return SyntheticCorpus.QUERIES[cursor++ % SyntheticCorpus.QUERIES.length];
+    }
+}
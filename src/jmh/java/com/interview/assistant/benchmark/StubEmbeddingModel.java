@@ -0,0 +1,70 @@
+package com.interview.assistant.benchmark;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * 确定性桩模型：每个语料主题词对应一个固定的随机方向，文本向量 = 命中主题方向之和 + 按文本哈希生成的噪声，再归一化。
+ * 同一文本恒得同一向量，含相同主题的查询与分块余弦相近，向量召回能命中；不加载 ONNX、不访问网络。
+ */
+public class StubEmbeddingModel implements EmbeddingModel {
+
+    private static final float NOISE = 0.35f;
+
+    private final int dimension;
+    private final float[][] topics;
+
+    public StubEmbeddingModel(int dimension) {
+        this.dimension = dimension;
+        this.topics = new float[SyntheticCorpus.TOPICS.length][];
+        for (int i = 0; i < topics.length; i++) {
+            topics[i] = unitVector(new SplittableRandom(SyntheticCorpus.TOPICS[i].hashCode()), dimension);
+        }
+    }
+
+    @Override
+    public Response<List<Embedding>> embedAll(List<TextSegment> segments) {
+        List<Embedding> out = new ArrayList<>(segments.size());
+        for (TextSegment segment : segments) {
+            out.add(Embedding.from(vectorOf(segment.text())));
+        }
+        return Response.from(out);
+    }
+
+    @Override
+    public int dimension() {
+        return dimension;
+    }
+
+    float[] vectorOf(String text) {
+        float[] v = unitVector(new SplittableRandom(text.hashCode()), dimension);
+        for (int d = 0; d < dimension; d++) v[d] *= NOISE;
+        for (int i = 0; i < topics.length; i++) {
+            if (!text.contains(SyntheticCorpus.TOPICS[i])) continue;
+            for (int d = 0; d < dimension; d++) v[d] += topics[i][d];
+        }
+        normalize(v);
+        return v;
+    }
+
+    static float[] unitVector(SplittableRandom rnd, int dimension) {
+        float[] v = new float[dimension];
+        for (int d = 0; d < dimension; d++) v[d] = (float) (rnd.nextDouble() * 2 - 1);
+        normalize(v);
+        return v;
+    }
+
+    private static void normalize(float[] v) {
+        double norm = 0;
+        for (float x : v) norm += x * x;
+        if (norm == 0) return;
+        float inv = (float) (1 / Math.sqrt(norm));
+        for (int d = 0; d < v.length; d++) v[d] *= inv;
+    }
+}
@@ -0,0 +1,84 @@
+package com.interview.assistant.benchmark;
+
+import com.interview.assistant.entity.InterviewExperience;
+import com.interview.assistant.service.RagService;
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.segment.TextSegment;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * 基准测试用的合成面经语料：按固定种子生成，公司 / 部门 / 主题分布固定，结果可复现。
+ * 每条面经产出 3 个块（总述、项目、八股），经 RagService 的真实分块与批量索引路径写入向量库。
+ */
+final class SyntheticCorpus {
+
+    static final long SEED = 20240501L;
+    static final int CHUNKS_PER_EXPERIENCE = 3;
+
+    static final String[] COMPANIES = {"字节跳动", "阿里巴巴", "腾讯", "美团", "京东", "百度", "快手", "拼多多", "小红书", "网易"};
+    static final String[] DEPARTMENTS = {"基础架构部", "电商", "广告", "搜索", "推荐", "云计算", "支付", "游戏"};
+    static final String[] TOPICS = {"Redis 缓存", "MySQL 索引", "Kafka 消息", "JVM 垃圾回收", "线程池", "HashMap 扩容",
+            "分布式锁", "Spring 事务", "RAG 检索", "向量数据库", "Transformer 注意力", "LRU 缓存", "一致性哈希",
+            "限流熔断", "CAP 理论", "TCP 三次握手", "B+ 树", "微服务拆分", "大模型微调", "秒杀系统"};
+    private static final String[] FILLER = {"面试官追问了细节", "让我手写代码", "结合项目讲讲", "对比了几种方案",
+            "问到线上故障怎么排查", "延伸到高并发场景", "最后反问环节", "整体难度中等"};
+    static final String[] QUERIES = {"Redis 缓存 设计", "MySQL 索引 优化", "Kafka 消息 可靠性", "JVM 垃圾回收 调优",
+            "线程池 参数", "分布式锁 实现", "RAG 检索 召回", "Transformer 注意力 机制", "秒杀系统 设计", "一致性哈希 原理"};
+
+    private SyntheticCorpus() {
+    }
+
+    /** 约 chunks 个块对应的面经，id 从 1 开始连续 */
+    static List<InterviewExperience> experiences(int chunks) {
+        SplittableRandom rnd = new SplittableRandom(SEED);
+        int count = Math.max(1, chunks / CHUNKS_PER_EXPERIENCE);
+        List<InterviewExperience> out = new ArrayList<>(count);
+        for (int i = 1; i <= count; i++) out.add(experience(rnd, i));
+        return out;
+    }
+
+    static InterviewExperience experience(SplittableRandom rnd, long id) {
+        InterviewExperience exp = new InterviewExperience();
+        exp.setId(id);
+        exp.setCompany(pick(rnd, COMPANIES));
+        exp.setDepartment(pick(rnd, DEPARTMENTS));
+        exp.setPosition("后端开发");
+        exp.setContent(paragraph(rnd, 6));
+        exp.setProjectExperiences(paragraph(rnd, 4));
+        exp.setBaguQuestions(paragraph(rnd, 5));
+        return exp;
+    }
+
+    /** 经 RagService 分块、Embedding 并写入其向量库 */
+    static void index(RagService ragService, List<InterviewExperience> experiences) {
+        int page = 512;
+        for (int from = 0; from < experiences.size(); from += page) {
+            ragService.indexExperiences(experiences.subList(from, Math.min(experiences.size(), from + page)));
+        }
+    }
+
+    /** 与 RagService 分块格式一致的单个块，用于直接压测向量库写入 */
+    static TextSegment segment(SplittableRandom rnd, long experienceId) {
+        String company = pick(rnd, COMPANIES);
+        String department = pick(rnd, DEPARTMENTS);
+        String text = "公司: " + company + "\n部门: " + department + "\n八股: " + paragraph(rnd, 5);
+        return TextSegment.from(text, Metadata.from(Map.of("experienceId", String.valueOf(experienceId),
+                "company", company, "department", department, "position", "后端开发", "type", "八股_Java")));
+    }
+
+    private static String paragraph(SplittableRandom rnd, int sentences) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < sentences; i++) {
+            sb.append(pick(rnd, TOPICS)).append('，').append(pick(rnd, FILLER)).append('。');
+        }
+        return sb.toString();
+    }
+
+    private static String pick(SplittableRandom rnd, String[] values) {
+        return values[rnd.nextInt(values.length)];
+    }
+}
@@ -2,7 +2,6 @@ package com.interview.assistant.config;
 
 import dev.langchain4j.data.segment.TextSegment;
 import dev.langchain4j.model.embedding.EmbeddingModel;
-import dev.langchain4j.model.embedding.onnx.allminilml6v2.AllMiniLmL6V2EmbeddingModel;
 import dev.langchain4j.store.embedding.EmbeddingStore;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
@@ -45,20 +44,49 @@ public class AppConfig implements WebMvcConfigurer {
                 .allowedHeaders("*");
     }
 
-    /** 智谱 API Key 已配置时使用智谱 Embedding，否则使用本地 AllMiniLM */
+    /**
+     * 智谱 API Key 已配置时使用智谱 Embedding，否则使用本地 AllMiniLM 会话池（启动时加载并预热）；
+     * 会话池实现了 AutoCloseable，容器关闭时由 Spring 推断的销毁方法调用 close 释放 ONNX 会话。
+     */
     @Bean
     public EmbeddingModel embeddingModel(@Value("${zhipu.apiKey:}") String zhipuApiKey,
+                                        @Value("${app.rag.local-embedding.sessions:2}") int sessions,
+                                        @Value("${app.rag.local-embedding.threads-per-session:0}") int threadsPerSession,
+                                        @Value("${app.rag.local-embedding.warm-up:true}") boolean warmUp,
                                         WebClient.Builder webClientBuilder) {
         String key = (zhipuApiKey != null && !zhipuApiKey.isBlank()) ? zhipuApiKey : System.getenv("ZHIPU_API_KEY");
         if (key != null && !key.isBlank()) {
             return new ZhipuEmbeddingModel(key, "", "embedding-2", webClientBuilder);
         }
-        return new AllMiniLmL6V2EmbeddingModel();
+        return new PooledLocalEmbeddingModel(sessions, threadsPerSession, warmUp);
     }
 
+    /**
+     * app.rag.store.storage=off-heap 时向量放在堆外 DirectByteBuffer，默认堆内；
+     * app.rag.store.index=hnsw 时使用 HNSW 近似检索，默认 flat 暴力扫描。
+     * app.rag.store.quantization=int8 时按 INT8 量化存储，rerank-factor 控制精排候选倍数；
+     * app.rag.store.parallelism>0 时 flat 扫描在专用 ForkJoinPool 上并行。
+     */
     @Bean
-    public EmbeddingStore<TextSegment> embeddingStore() {
-        return new InterviewEmbeddingStore();
+    public EmbeddingStore<TextSegment> embeddingStore(@Value("${app.rag.store.storage:heap}") String storage,
+                                                      @Value("${app.rag.store.index:flat}") String index,
+                                                      @Value("${app.rag.store.hnsw.m:16}") int hnswM,
+                                                      @Value("${app.rag.store.hnsw.ef-construction:200}") int efConstruction,
+                                                      @Value("${app.rag.store.hnsw.ef-search:64}") int efSearch,
+                                                      @Value("${app.rag.store.quantization:none}") String quantization,
+                                                      @Value("${app.rag.store.rerank-factor:4}") int rerankFactor,
+                                                      @Value("${app.rag.store.parallelism:0}") int parallelism,
+                                                      @Value("${app.rag.store.parallel-threshold:50000}") int parallelThreshold) {
+        return new InterviewEmbeddingStore(new InterviewEmbeddingStore.Options()
+                .storage(InterviewEmbeddingStore.Storage.parse(storage))
+                .index(InterviewEmbeddingStore.IndexType.parse(index))
+                .hnswM(hnswM)
+                .hnswEfConstruction(efConstruction)
+                .hnswEfSearch(efSearch)
+                .quantization(InterviewEmbeddingStore.Quantization.parse(quantization))
+                .rerankFactor(rerankFactor)
+                .parallelism(parallelism)
+                .parallelThreshold(parallelThreshold));
     }
 
     @Bean
@@ -4,6 +4,7 @@ import com.interview.assistant.entity.AlgorithmQuestion;
 import com.interview.assistant.entity.InterviewExperience;
 import com.interview.assistant.repository.AlgorithmQuestionRepository;
 import com.interview.assistant.repository.InterviewExperienceRepository;
+import com.interview.assistant.service.RagIndexSyncService;
 import com.interview.assistant.service.RagService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -22,13 +23,19 @@ public class DataLoader implements CommandLineRunner {
     private final InterviewExperienceRepository experienceRepository;
     private final AlgorithmQuestionRepository algorithmRepository;
     private final RagService ragService;
+    private final RagIndexSyncService syncService;
+    private final EmbeddingModelResolver modelResolver;
 
     public DataLoader(InterviewExperienceRepository experienceRepository,
                       AlgorithmQuestionRepository algorithmRepository,
-                      RagService ragService) {
+                      RagService ragService,
+                      RagIndexSyncService syncService,
+                      EmbeddingModelResolver modelResolver) {
         this.experienceRepository = experienceRepository;
         this.algorithmRepository = algorithmRepository;
         this.ragService = ragService;
+        this.syncService = syncService;
+        this.modelResolver = modelResolver;
     }
 
     @Override
@@ -37,13 +44,31 @@ public class DataLoader implements CommandLineRunner {
         reindexRagFromDb();
     }
 
-    /** 启动时从数据库重建 RAG 向量索引（向量在内存，重启后需重新索引；先清空再全量索引避免重复） */
+    /**
+     * 启动时重建 RAG 向量索引：优先从本地快照恢复，再由增量同步按内容版本只对新增 / 变更的面经重新 Embedding，
+     * 并剔除数据库中已删除的面经；无可用快照时在影子库中全量重建后整体替换（文本未变的块命中分块向量缓存）。
+     * 快照属于之前的 Embedding 模型时，重建期间双读旧模型的索引，回填完成后原子切换。
+     */
     private void reindexRagFromDb() {
-        List<InterviewExperience> all = experienceRepository.findAll();
-        if (all.isEmpty()) return;
-        ragService.clearAll();
-        ragService.indexExperiencesAsync(all);
-        log.info("RAG 启动索引: {} 条面经（后台执行中）", all.size());
+        if (ragService.restoreSnapshot()) {
+            syncService.syncAsync();
+            log.info("RAG 启动索引: 快照中 {} 条面经，增量同步后台执行中", ragService.indexedExperienceIds().size());
+            return;
+        }
+        if (ragService.restoreLegacySnapshot(modelResolver::resolve, modelResolver::release)) {
+            if (syncService.rebuildAsync()) {
+                log.info("RAG 启动索引: Embedding 模型已变更，双读旧模型索引，新模型向量后台回填中，进度见 GET /api/rag/rebuild");
+            } else {
+                log.warn("RAG 启动索引: 新模型回填未能启动，继续双读旧模型索引，可稍后 POST /api/rag/rebuild 重试");
+            }
+            return;
+        }
+        ragService.pruneChunkCache();
+        if (syncService.rebuildAsync()) {
+            log.info("RAG 启动索引: 无可用快照，全量重建后台执行中，进度见 GET /api/rag/rebuild");
+        } else {
+            log.warn("RAG 启动索引: 全量重建未能启动，可稍后 POST /api/rag/rebuild 重试");
+        }
     }
 
     private void loadSampleData() {
@@ -68,8 +93,8 @@ public class DataLoader implements CommandLineRunner {
                         null, "快速排序、二分查找")
         );
 
+        // 向量索引由 reindexRagFromDb 统一补齐
         experienceRepository.saveAll(experiences);
-        ragService.indexExperiences(experiences);
         log.info("Loaded {} sample interview experiences", experiences.size());
 
         if (algorithmRepository.count() > 0) return;
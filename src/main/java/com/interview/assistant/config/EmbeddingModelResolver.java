@@ -0,0 +1,69 @@
+package com.interview.assistant.config;
+
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 按模型 id 构造 Embedding 模型，用于切换模型期间继续用旧模型查询旧索引（双读）。
+ * 本地 AllMiniLM 总能构造；智谱模型需要仍配置着 API Key。
+ * 同一 id 只构造一次并缓存，双读结束时由 {@link #release} 关闭（本地会话池持有 ONNX 会话），容器关闭时释放全部。
+ */
+@Component
+public class EmbeddingModelResolver {
+
+    private static final Logger log = LoggerFactory.getLogger(EmbeddingModelResolver.class);
+
+    private static final String ZHIPU_PREFIX = "zhipu/";
+
+    private final String zhipuApiKey;
+    private final WebClient.Builder webClientBuilder;
+    private final Map<String, EmbeddingModel> models = new ConcurrentHashMap<>();
+
+    public EmbeddingModelResolver(@Value("${zhipu.apiKey:}") String zhipuApiKey, WebClient.Builder webClientBuilder) {
+        this.zhipuApiKey = (zhipuApiKey != null && !zhipuApiKey.isBlank()) ? zhipuApiKey : System.getenv("ZHIPU_API_KEY");
+        this.webClientBuilder = webClientBuilder;
+    }
+
+    /** 无法构造该模型时返回 null */
+    public EmbeddingModel resolve(String modelId) {
+        if (modelId == null) return null;
+        return models.computeIfAbsent(modelId, this::create);
+    }
+
+    /** 不再使用该模型：移出缓存并释放其资源 */
+    public void release(String modelId) {
+        if (modelId == null) return;
+        EmbeddingModel model = models.remove(modelId);
+        if (model instanceof AutoCloseable closeable) {
+            try {
+                closeable.close();
+            } catch (Exception e) {
+                log.warn("释放 Embedding 模型 {} 失败: {}", modelId, e.getMessage());
+            }
+        }
+    }
+
+    @PreDestroy
+    public void releaseAll() {
+        for (String modelId : List.copyOf(models.keySet())) release(modelId);
+    }
+
+    private EmbeddingModel create(String modelId) {
+        if (EmbeddingModels.ALL_MINILM_L6_V2.equals(modelId)) {
+            return new PooledLocalEmbeddingModel(1, 0, false);
+        }
+        if (modelId.startsWith(ZHIPU_PREFIX) && zhipuApiKey != null && !zhipuApiKey.isBlank()) {
+            return new ZhipuEmbeddingModel(zhipuApiKey, "", modelId.substring(ZHIPU_PREFIX.length()), webClientBuilder);
+        }
+        return null;
+    }
+}
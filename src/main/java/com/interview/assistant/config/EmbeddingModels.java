@@ -0,0 +1,24 @@
+package com.interview.assistant.config;
+
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.embedding.onnx.allminilml6v2.AllMiniLmL6V2EmbeddingModel;
+
+/**
+ * Embedding 模型标识：写入索引快照、缓存 key 等，用于判断向量是否由同一模型产生。
+ */
+public final class EmbeddingModels {
+
+    public static final String ALL_MINILM_L6_V2 = "all-minilm-l6-v2";
+
+    private EmbeddingModels() {
+    }
+
+    public static String idOf(EmbeddingModel model) {
+        if (model == null) return "unknown";
+        if (model instanceof ZhipuEmbeddingModel zhipu) return "zhipu/" + zhipu.modelName();
+        if (model instanceof AllMiniLmL6V2EmbeddingModel || model instanceof PooledLocalEmbeddingModel) {
+            return ALL_MINILM_L6_V2;
+        }
+        return model.getClass().getSimpleName();
+    }
+}
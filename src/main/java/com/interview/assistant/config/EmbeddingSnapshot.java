@@ -0,0 +1,154 @@
+package com.interview.assistant.config;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.segment.TextSegment;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.IntFunction;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * 向量库二进制快照。文件布局（大端序）：
+ * <pre>
+ * int magic | int formatVersion | string modelId | int dim | int rows
+ * float[rows * dim]                       -- 归一化向量，连续存放，加载时按区段 mmap 后整块拷入矩阵
+ * rows × { id, hasSegment, text, metadata k/v... }      -- string 均为 int 长度 + UTF-8 字节，-1 表示 null
+ * </pre>
+ * 写入先落临时文件再原子替换，进程中途退出不会留下半个快照。
+ */
+final class EmbeddingSnapshot {
+
+    static final int MAGIC = 0x49455342;
+    static final int FORMAT_VERSION = 1;
+    /** 单次 mmap 的最大字节数（MappedByteBuffer 上限为 2GB） */
+    private static final long MAX_MAP_BYTES = 1L << 30;
+
+    record Header(int formatVersion, String modelId, int dim, int rows, long vectorOffset) {
+        long metaOffset() {
+            return vectorOffset + (long) rows * dim * Float.BYTES;
+        }
+    }
+
+    private EmbeddingSnapshot() {
+    }
+
+    static void write(Path file, String modelId, VectorMatrix matrix, int[] liveRows,
+                      String[] ids, IntFunction<TextSegment> segments) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) Files.createDirectories(parent);
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        int dim = matrix.dimension();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            writeString(out, modelId);
+            out.writeInt(dim);
+            out.writeInt(liveRows.length);
+            float[] buf = new float[dim];
+            for (int row : liveRows) {
+                matrix.get(row, buf);
+                for (float v : buf) out.writeFloat(v);
+            }
+            for (int row : liveRows) {
+                writeString(out, ids[row]);
+                TextSegment seg = segments.apply(row);
+                out.writeBoolean(seg != null);
+                if (seg == null) continue;
+                writeString(out, seg.text());
+                Map<String, Object> meta = seg.metadata() != null ? seg.metadata().toMap() : Map.of();
+                out.writeInt(meta.size());
+                for (Map.Entry<String, Object> e : meta.entrySet()) {
+                    writeString(out, e.getKey());
+                    writeString(out, e.getValue() != null ? e.getValue().toString() : null);
+                }
+            }
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /** 读取文件头；文件不存在或不是快照格式时返回 null */
+    static Header readHeader(Path file) throws IOException {
+        if (!Files.isRegularFile(file)) return null;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC) return null;
+            int version = in.readInt();
+            String modelId = readString(in);
+            int dim = in.readInt();
+            int rows = in.readInt();
+            long offset = 4 + 4 + 4 + (modelId != null ? modelId.getBytes(StandardCharsets.UTF_8).length : 0) + 4 + 4;
+            return new Header(version, modelId, dim, rows, offset);
+        }
+    }
+
+    /** 按区段 mmap 向量块并整块拷入 matrix 的前 rows 行 */
+    static void readVectors(Path file, Header header, VectorMatrix matrix) throws IOException {
+        long rowBytes = (long) header.dim() * Float.BYTES;
+        int rowsPerRegion = (int) Math.max(1, MAX_MAP_BYTES / rowBytes);
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            for (int start = 0; start < header.rows(); start += rowsPerRegion) {
+                int n = Math.min(rowsPerRegion, header.rows() - start);
+                FloatBuffer region = ch.map(FileChannel.MapMode.READ_ONLY,
+                                header.vectorOffset() + start * rowBytes, n * rowBytes)
+                        .order(ByteOrder.BIG_ENDIAN)
+                        .asFloatBuffer();
+                matrix.loadRows(start, region, n);
+            }
+        }
+    }
+
+    /** 逐行读出 id 与 TextSegment，TextSegment 交给 sink 处理（没有文本的行不回调） */
+    static void readRows(Path file, Header header, String[] ids, ObjIntConsumer<TextSegment> sink) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            ch.position(header.metaOffset());
+            InputStream raw = Channels.newInputStream(ch);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(raw, 1 << 16));
+            for (int row = 0; row < header.rows(); row++) {
+                ids[row] = readString(in);
+                if (!in.readBoolean()) continue;
+                String text = readString(in);
+                int n = in.readInt();
+                Map<String, Object> meta = new HashMap<>(n * 2);
+                for (int i = 0; i < n; i++) {
+                    String k = readString(in);
+                    String v = readString(in);
+                    if (k != null && v != null) meta.put(k, v);
+                }
+                sink.accept(TextSegment.from(text != null ? text : "", Metadata.from(meta)), row);
+            }
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(b.length);
+        out.write(b);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int len = in.readInt();
+        if (len < 0) return null;
+        byte[] b = new byte[len];
+        in.readFully(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+}
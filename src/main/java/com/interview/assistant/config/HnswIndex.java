@@ -0,0 +1,362 @@
+package com.interview.assistant.config;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.SplittableRandom;
+
+/**
+ * HNSW（Hierarchical Navigable Small World）近似最近邻图，节点号即 {@link InterviewEmbeddingStore} 中的行号。
+ * <p>
+ * 图本身不保存向量，距离计算直接读存储矩阵；相似度为归一化向量点积（越大越近）。
+ * 删除沿用存储的墓碑：被删节点仍作为路由点参与遍历，但不会出现在结果里；
+ * 存储压缩行号时由 {@link #compacted} 在旁边生成按新行号重写、修补断边后的新图，旧图保持不变。
+ * <p>
+ * 单写多读：插入由存储的写锁串行化；检索不加锁，只遍历节点号小于调用方视图行数的节点，并从视图发布时记下的入口点出发。
+ * 写方原地追加邻居时先写元素再写个数、裁剪时整体替换邻接数组，检索读到的邻接表可能略旧，但其中的节点号始终有效。
+ */
+final class HnswIndex {
+
+    private final int m;
+    private final int maxM0;
+    private final int efConstruction;
+    private volatile int efSearch;
+    private final double levelMult;
+    private final SplittableRandom random = new SplittableRandom(42);
+
+    /** 入口点与其层数，成对发布 */
+    record Entry(int node, int level) {}
+
+    /** neighbors[node][level] = 邻居数组，下标 0 存放邻居个数；扩容时复制后整体替换 */
+    private volatile int[][][] neighbors = new int[0][][];
+    private volatile Entry entry;
+
+    private final ThreadLocal<Visited> visited = ThreadLocal.withInitial(Visited::new);
+
+    HnswIndex(int m, int efConstruction, int efSearch) {
+        this.m = Math.max(4, m);
+        this.maxM0 = this.m * 2;
+        this.efConstruction = Math.max(efConstruction, this.m);
+        this.efSearch = Math.max(1, efSearch);
+        this.levelMult = 1.0 / Math.log(this.m);
+    }
+
+    int efSearch() {
+        return efSearch;
+    }
+
+    void setEfSearch(int efSearch) {
+        this.efSearch = Math.max(1, efSearch);
+    }
+
+    /** 当前入口点，图为空时为 null；存储发布视图时记下，检索从这里出发 */
+    Entry entry() {
+        return entry;
+    }
+
+    /** 插入节点 node（其向量已写入 matrix 第 node 行） */
+    void insert(int node, float[] vector, VectorMatrix matrix) {
+        ensureCapacity(node + 1);
+        int level = (int) (-Math.log(1.0 - random.nextDouble()) * levelMult);
+        int[][] links = new int[level + 1][];
+        for (int l = 0; l <= level; l++) {
+            links[l] = new int[(l == 0 ? maxM0 : m) + 1];
+        }
+        neighbors[node] = links;
+        Entry top = entry;
+        if (top == null) {
+            entry = new Entry(node, level);
+            return;
+        }
+        int limit = node + 1;
+        int ep = top.node();
+        for (int l = top.level(); l > level; l--) {
+            ep = greedyClosest(vector, ep, l, matrix, limit);
+        }
+        float[] buf = new float[matrix.dimension()];
+        for (int l = Math.min(level, top.level()); l >= 0; l--) {
+            NodeHeap found = searchLayer(vector, ep, efConstruction, l, matrix, null, null, limit);
+            int[] selected = selectNeighbors(found, m, matrix, buf);
+            int[] own = links[l];
+            for (int s : selected) {
+                own[++own[0]] = s;
+                connect(s, node, l, matrix, buf);
+            }
+            ep = bestOf(found);
+        }
+        if (level > top.level()) entry = new Entry(node, level);
+    }
+
+    /**
+     * 检索 ef 个近邻并返回大小为 ef 的小顶堆（堆顶为其中最差者）。只遍历节点号小于 limit 的节点，
+     * 从 start（调用方视图发布时的入口点）出发；deleted 中的节点、以及 allowed 非 null 时不在其中的节点，
+     * 仍可作为路由点遍历，但不会进入结果。
+     */
+    NodeHeap search(float[] query, int ef, VectorMatrix matrix, BitSet deleted, BitSet allowed, Entry start, int limit) {
+        if (start == null || start.node() >= limit) return new NodeHeap(1);
+        int ep = start.node();
+        for (int l = start.level(); l > 0; l--) {
+            ep = greedyClosest(query, ep, l, matrix, limit);
+        }
+        return searchLayer(query, ep, Math.max(ef, efSearch), 0, matrix, deleted, allowed, limit);
+    }
+
+    /**
+     * 压缩：按 oldToNew 生成新行号下的新图并返回，本图保持不变，可在写入继续追加、检索继续读取的同时在旁边完成。
+     * oldToNew[old] 为新行号，-1 表示该节点已被物理删除；节点号不小于 oldToNew.length 的是压缩开始后才追加的节点，
+     * 不带入新图（由调用方随后插入）。matrix 为已按新行号拷好的新矩阵。
+     * 失去邻居的节点用原邻居加上被删邻居的存活邻居（两跳）重新做启发式选择，避免图被删成孤岛；
+     * 被删节点超过存活节点的一半时局部修补不再可靠，直接按新行号重建整张图。入口点失效时改用层级最高的存活节点。
+     */
+    HnswIndex compacted(int[] oldToNew, int newSize, VectorMatrix matrix) {
+        HnswIndex next = new HnswIndex(m, efConstruction, efSearch);
+        int[][][] old = neighbors;
+        int dropped = 0;
+        for (int node = 0; node < oldToNew.length && node < old.length; node++) {
+            if (oldToNew[node] < 0 && old[node] != null) dropped++;
+        }
+        if (dropped > newSize / 2) {
+            float[] buf = new float[matrix.dimension()];
+            for (int row = 0; row < newSize; row++) {
+                matrix.get(row, buf);
+                next.insert(row, buf, matrix);
+            }
+            return next;
+        }
+        int[][][] remappedAll = new int[Math.max(newSize, 16)][][];
+        Entry newEntry = null;
+        Visited seen = new Visited();
+        float[] self = new float[matrix.dimension()];
+        float[] buf = new float[matrix.dimension()];
+        for (int node = 0; node < oldToNew.length && node < old.length; node++) {
+            int nid = oldToNew[node];
+            if (nid < 0 || old[node] == null) continue;
+            int[][] links = old[node];
+            int[][] remapped = new int[links.length][];
+            for (int l = 0; l < links.length; l++) {
+                remapped[l] = remapLayer(old, nid, links[l], l, oldToNew, matrix, seen, self, buf);
+            }
+            remappedAll[nid] = remapped;
+            if (newEntry == null || links.length - 1 > newEntry.level()) newEntry = new Entry(nid, links.length - 1);
+        }
+        Entry top = entry;
+        if (top != null && top.node() < oldToNew.length && oldToNew[top.node()] >= 0) {
+            newEntry = new Entry(oldToNew[top.node()], top.level());
+        }
+        next.neighbors = remappedAll;
+        next.entry = newEntry;
+        return next;
+    }
+
+    /**
+     * 重写一层邻接表（读旧图 old）；有邻居被删时从两跳候选中重新选满。
+     * 旧图可能正被写方追加，先按当前个数拷出一份再处理；压缩开始后才追加的邻居直接跳过，不算断边。
+     */
+    private int[] remapLayer(int[][][] old, int nid, int[] current, int level, int[] oldToNew, VectorMatrix matrix,
+                             Visited seen, float[] self, float[] buf) {
+        int[] layer = Arrays.copyOf(current, current.length);
+        int count = Math.min(layer[0], layer.length - 1);
+        int[] out = new int[layer.length];
+        boolean lost = false;
+        for (int i = 1; i <= count; i++) {
+            if (layer[i] >= oldToNew.length) continue;
+            int target = oldToNew[layer[i]];
+            if (target >= 0) out[++out[0]] = target;
+            else lost = true;
+        }
+        if (!lost) return out;
+        seen.reset(oldToNew.length);
+        seen.mark(nid);
+        NodeHeap pool = new NodeHeap(layer.length * 2);
+        matrix.get(nid, self);
+        for (int i = 1; i <= count; i++) {
+            if (layer[i] >= oldToNew.length) continue;
+            int target = oldToNew[layer[i]];
+            if (target >= 0) {
+                if (seen.mark(target)) pool.push(target, matrix.dot(target, self));
+                continue;
+            }
+            int[][] hop = layer[i] < old.length ? old[layer[i]] : null;
+            if (hop == null || level >= hop.length) continue;
+            int[] hopLayer = hop[level];
+            int hopCount = Math.min(hopLayer[0], hopLayer.length - 1);
+            for (int j = 1; j <= hopCount; j++) {
+                int second = hopLayer[j] < oldToNew.length ? oldToNew[hopLayer[j]] : -1;
+                if (second >= 0 && seen.mark(second)) pool.push(second, matrix.dot(second, self));
+            }
+        }
+        int[] kept = selectNeighbors(pool, layer.length - 1, matrix, buf);
+        out[0] = kept.length;
+        System.arraycopy(kept, 0, out, 1, kept.length);
+        return out;
+    }
+
+    private void ensureCapacity(int n) {
+        if (n <= neighbors.length) return;
+        neighbors = Arrays.copyOf(neighbors, Math.max(n, Math.max(16, neighbors.length * 2)));
+    }
+
+    private int greedyClosest(float[] query, int ep, int level, VectorMatrix matrix, int limit) {
+        int[][][] graph = neighbors;
+        int cur = ep;
+        float curScore = matrix.dot(cur, query);
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            int[] layer = graph[cur][level];
+            int count = layer[0];
+            for (int i = 1; i <= count; i++) {
+                int cand = layer[i];
+                if (cand >= limit) continue;
+                float s = matrix.dot(cand, query);
+                if (s > curScore) {
+                    curScore = s;
+                    cur = cand;
+                    changed = true;
+                }
+            }
+        }
+        return cur;
+    }
+
+    private NodeHeap searchLayer(float[] query, int ep, int ef, int level, VectorMatrix matrix,
+                                 BitSet deleted, BitSet allowed, int limit) {
+        int[][][] graph = neighbors;
+        Visited seen = visited.get();
+        seen.reset(limit);
+        // candidates 为大顶堆（存相反数），results 为小顶堆
+        NodeHeap candidates = new NodeHeap(ef * 2);
+        NodeHeap results = new NodeHeap(ef + 1);
+        float epScore = matrix.dot(ep, query);
+        seen.mark(ep);
+        candidates.push(ep, -epScore);
+        if (accepts(ep, deleted, allowed)) results.push(ep, epScore);
+        float lowerBound = results.isEmpty() ? Float.NEGATIVE_INFINITY : results.topScore();
+        while (!candidates.isEmpty()) {
+            int c = candidates.topNode();
+            float cScore = -candidates.topScore();
+            if (results.size() >= ef && cScore < lowerBound) break;
+            candidates.pop();
+            int[][] links = graph[c];
+            if (links == null || level >= links.length) continue;
+            int[] layer = links[level];
+            int count = layer[0];
+            for (int i = 1; i <= count; i++) {
+                int n = layer[i];
+                if (n >= limit || !seen.mark(n)) continue;
+                float s = matrix.dot(n, query);
+                if (results.size() < ef || s > lowerBound) {
+                    candidates.push(n, -s);
+                    if (accepts(n, deleted, allowed)) {
+                        results.push(n, s);
+                        if (results.size() > ef) results.pop();
+                    }
+                    if (!results.isEmpty()) lowerBound = results.topScore();
+                }
+            }
+        }
+        return results;
+    }
+
+    private static boolean accepts(int node, BitSet deleted, BitSet allowed) {
+        return (deleted == null || !deleted.get(node)) && (allowed == null || allowed.get(node));
+    }
+
+    /** HNSW 论文中的启发式邻居选择：优先保留彼此不太相似的候选，保持图的连通与多样性 */
+    private int[] selectNeighbors(NodeHeap found, int limit, VectorMatrix matrix, float[] buf) {
+        int n = found.size();
+        int[] order = new int[n];
+        float[] score = new float[n];
+        NodeHeap copy = new NodeHeap(n);
+        for (int i = 0; i < n; i++) copy.push(found.nodeAt(i), found.scoreAt(i));
+        for (int i = n - 1; i >= 0; i--) {
+            order[i] = copy.topNode();
+            score[i] = copy.topScore();
+            copy.pop();
+        }
+        int[] kept = new int[Math.min(limit, n)];
+        int k = 0;
+        for (int i = 0; i < n && k < kept.length; i++) {
+            int cand = order[i];
+            matrix.get(cand, buf);
+            boolean good = true;
+            for (int j = 0; j < k; j++) {
+                if (matrix.dot(kept[j], buf) > score[i]) {
+                    good = false;
+                    break;
+                }
+            }
+            if (good) kept[k++] = cand;
+        }
+        // 启发式选不满时用剩余最近者补齐
+        for (int i = 0; i < n && k < kept.length; i++) {
+            int cand = order[i];
+            boolean present = false;
+            for (int j = 0; j < k; j++) {
+                if (kept[j] == cand) {
+                    present = true;
+                    break;
+                }
+            }
+            if (!present) kept[k++] = cand;
+        }
+        return k == kept.length ? kept : Arrays.copyOf(kept, k);
+    }
+
+    private void connect(int from, int to, int level, VectorMatrix matrix, float[] buf) {
+        int[][] links = neighbors[from];
+        int[] layer = links[level];
+        int cap = layer.length - 1;
+        if (layer[0] < cap) {
+            // 先写元素再写个数，并发检索读到的前 layer[0] 个邻居总是已写入的
+            layer[layer[0] + 1] = to;
+            layer[0]++;
+            return;
+        }
+        // 邻居已满：把新边加入后重新做一次启发式裁剪，结果写入新数组后整体替换
+        matrix.get(from, buf);
+        NodeHeap pool = new NodeHeap(cap + 1);
+        for (int i = 1; i <= layer[0]; i++) pool.push(layer[i], matrix.dot(layer[i], buf));
+        pool.push(to, matrix.dot(to, buf));
+        int[] kept = selectNeighbors(pool, cap, matrix, buf);
+        int[] pruned = new int[layer.length];
+        pruned[0] = kept.length;
+        System.arraycopy(kept, 0, pruned, 1, kept.length);
+        links[level] = pruned;
+    }
+
+    private static int bestOf(NodeHeap heap) {
+        int best = heap.nodeAt(0);
+        float bestScore = heap.scoreAt(0);
+        for (int i = 1; i < heap.size(); i++) {
+            if (heap.scoreAt(i) > bestScore) {
+                bestScore = heap.scoreAt(i);
+                best = heap.nodeAt(i);
+            }
+        }
+        return best;
+    }
+
+    /** 按代际号标记的访问表，避免每次检索分配/清零 */
+    private static final class Visited {
+        private int[] marks = new int[0];
+        private int epoch;
+
+        void reset(int n) {
+            if (marks.length < n) {
+                marks = new int[Math.max(n, marks.length * 2)];
+                epoch = 0;
+            }
+            if (++epoch == Integer.MAX_VALUE) {
+                Arrays.fill(marks, 0);
+                epoch = 1;
+            }
+        }
+
+        /** 首次访问返回 true */
+        boolean mark(int node) {
+            if (marks[node] == epoch) return false;
+            marks[node] = epoch;
+            return true;
+        }
+    }
+}
@@ -5,50 +5,308 @@ import dev.langchain4j.data.segment.TextSegment;
 import dev.langchain4j.store.embedding.EmbeddingMatch;
 import dev.langchain4j.store.embedding.EmbeddingStore;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
-import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * 支持按 experienceId 移除和 clear 的 In-Memory EmbeddingStore，用于面经按字段分块后的索引。
+ * <p>
+ * 所有向量写入时即归一化，按行存放在分段的 {@link VectorMatrix}（每段为堆内 float[]、堆外 ByteBuffer 或 INT8 码）中，
+ * 只追加写入，扩容追加新段而不搬移已有行；行号 → id / TextSegment 由两张平行数组维护，检索即一次线性点积扫描。
+ * 删除只打墓碑，墓碑过多时由后台线程压缩，删除调用本身只是置位。
+ * <p>
+ * 检索方式可选：{@link IndexType#FLAT} 暴力扫描（精确），{@link IndexType#HNSW} 近似最近邻图（大语料下亚毫秒级）。
+ * FLAT 模式可开启并行扫描：行数超过阈值时在专用 ForkJoinPool 上分段求局部 top-K 后合并。
+ * 可选 {@link Quantization#INT8} 量化存储（内存约 1/4），先按量化分数取 rerankFactor 倍候选，再用原向量精排。
+ * <p>
+ * 可通过 {@link #writeSnapshot}/{@link #loadSnapshot} 持久化到本地二进制快照，重启后免去全量重新 Embedding。
+ * <p>
+ * 同时维护一份关键词倒排索引（{@link KeywordIndex}，BM25），供 {@link #keywordSearch} 做关键词补召回，无需全量扫描。
+ * <p>
+ * 按公司 / 部门 / 块类型维护行号位图分区，{@link SearchFilter} 下推到向量与关键词检索中，只对命中分区的块打分。
+ * <p>
+ * 另维护 experienceId → 行号、id → 行号两张二级索引，与增删在同一把写锁内更新，按面经 / id 删除无需全量扫描。
+ * <p>
+ * 并发：写入由一把写锁串行化，每次写入结束时发布一个不可变视图（行数、墓碑位图及各结构的引用），
+ * 检索只读 volatile 的视图引用，全程不加锁，不会被写入或压缩阻塞。压缩在旁边建好新结构，只在补追加期间的增量时持写锁。
  */
 public class InterviewEmbeddingStore implements EmbeddingStore<TextSegment> {
 
     private static final String META_EXPERIENCE_ID = "experienceId";
+    private static final String META_COMPANY = "company";
+    private static final String META_DEPARTMENT = "department";
+    private static final String META_TYPE = "type";
+    /** 未指定条数时关键词召回保留的 top 数 */
+    private static final int DEFAULT_KEYWORD_LIMIT = 100;
+    private static final int INITIAL_CAPACITY = 1024;
+    /** 矩阵每段行数，取打分块大小的整数倍，保证块不跨段 */
+    private static final int SEGMENT_ROWS = 2048;
+    /** 所有实例共用的后台压缩线程 */
+    private static final ExecutorService COMPACTOR = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "embedding-store-compactor");
+        t.setDaemon(true);
+        return t;
+    });
+    /** 墓碑行占比超过该值时压缩 */
+    private static final double COMPACT_RATIO = 0.25;
+    /** HNSW 模式下过滤后候选不超过该值时直接精确扫描分区 */
+    private static final int FILTERED_BRUTE_FORCE_LIMIT = 4096;
+    /** 量化模式粗筛阈值的放宽量，避免近似误差把阈值附近的结果提前滤掉 */
+    private static final float QUANTIZED_SCORE_SLACK = 0.05f;
+    /** 并行扫描时每个叶子任务负责的行数 */
+    private static final int PARALLEL_LEAF_ROWS = 16 * 1024;
+    /** 全量扫描时每块打分的行数，分数写入线程私有的复用数组 */
+    private static final ThreadLocal<float[]> SCORE_BLOCK = ThreadLocal.withInitial(() -> new float[256]);
+    /** 版本号全局递增，重建替换后的新库也不会与旧库的版本号重复 */
+    private static final AtomicLong VERSION_SEQ = new AtomicLong();
 
-    private final List<Entry> entries = new CopyOnWriteArrayList<>();
+    /** 向量存储位置 */
+    public enum Storage {
+        HEAP, OFF_HEAP;
 
-    private static class Entry {
-        final String id;
-        final float[] vector;
-        final TextSegment segment;
+        /** 解析配置值 heap / off-heap，无法识别时回退到 HEAP */
+        public static Storage parse(String value) {
+            if (value == null) return HEAP;
+            String v = value.trim().replace('-', '_').toUpperCase();
+            return "OFF_HEAP".equals(v) ? OFF_HEAP : HEAP;
+        }
+    }
+
+    /** 向量量化方式 */
+    public enum Quantization {
+        NONE, INT8;
+
+        /** 解析配置值 none / int8，无法识别时回退到 NONE */
+        public static Quantization parse(String value) {
+            return value != null && "INT8".equalsIgnoreCase(value.trim()) ? INT8 : NONE;
+        }
+    }
+
+    /** 向量检索方式 */
+    public enum IndexType {
+        FLAT, HNSW;
+
+        /** 解析配置值 flat / hnsw，无法识别时回退到 FLAT */
+        public static IndexType parse(String value) {
+            return value != null && "HNSW".equalsIgnoreCase(value.trim()) ? HNSW : FLAT;
+        }
+    }
+
+    /** 存储与索引参数，未设置的项使用默认值 */
+    public static class Options {
+        private Storage storage = Storage.HEAP;
+        private IndexType index = IndexType.FLAT;
+        private int hnswM = 16;
+        private int hnswEfConstruction = 200;
+        private int hnswEfSearch = 64;
+        private Quantization quantization = Quantization.NONE;
+        private int rerankFactor = 4;
+        private int parallelism;
+        private int parallelThreshold = 50_000;
+
+        public Options storage(Storage storage) {
+            if (storage != null) this.storage = storage;
+            return this;
+        }
+
+        public Options quantization(Quantization quantization) {
+            if (quantization != null) this.quantization = quantization;
+            return this;
+        }
+
+        /** 暴力扫描的并行线程数，0 表示在调用线程上顺序扫描 */
+        public Options parallelism(int parallelism) {
+            this.parallelism = Math.max(0, parallelism);
+            return this;
+        }
+
+        /** 行数低于该值时即使开启并行也顺序扫描，避免小语料付出 fork 开销 */
+        public Options parallelThreshold(int parallelThreshold) {
+            this.parallelThreshold = Math.max(0, parallelThreshold);
+            return this;
+        }
+
+        /** 量化模式下按 K × rerankFactor 取候选后用原向量精排；0 表示不精排、也不保留原向量 */
+        public Options rerankFactor(int rerankFactor) {
+            this.rerankFactor = Math.max(0, rerankFactor);
+            return this;
+        }
+
+        public Options index(IndexType index) {
+            if (index != null) this.index = index;
+            return this;
+        }
+
+        /** HNSW 每层邻居数 M（第 0 层为 2M） */
+        public Options hnswM(int m) {
+            this.hnswM = m;
+            return this;
+        }
+
+        public Options hnswEfConstruction(int efConstruction) {
+            this.hnswEfConstruction = efConstruction;
+            return this;
+        }
+
+        /** 检索时的候选队列长度，越大召回越高、越慢 */
+        public Options hnswEfSearch(int efSearch) {
+            this.hnswEfSearch = efSearch;
+            return this;
+        }
+    }
+
+    /** 检索过滤条件：company / department 精确匹配，types 为块类型白名单；各项为 null 或空表示不限 */
+    public record SearchFilter(String company, String department, Set<String> types) {
+
+        public static SearchFilter of(String company, String department) {
+            return new SearchFilter(company, department, null);
+        }
+
+        public boolean isEmpty() {
+            return (company == null || company.isEmpty()) && (department == null || department.isEmpty())
+                    && (types == null || types.isEmpty());
+        }
+    }
+
+    /** 关键词召回命中：score 为归一化 BM25 分（0~1） */
+    public record KeywordMatch(String id, TextSegment segment, double score) {}
+
+    private final Options options;
+    private final Storage storage;
+    private final Quantization quantization;
+    private final int rerankFactor;
+    /** 并行扫描专用线程池，未开启时为 null */
+    private final ForkJoinPool scanPool;
+    private final int parallelThreshold;
+    /** 串行化所有写入；检索不取这把锁 */
+    private final ReentrantLock writeLock = new ReentrantLock();
+    /** 串行化压缩，压缩的主体在 writeLock 之外完成 */
+    private final ReentrantLock compactLock = new ReentrantLock();
+
+    // 以下为写方的工作状态，只在持有 writeLock 时读写；检索只读已发布的 view
+
+    /** HNSW 图，FLAT 模式为 null；加载快照、压缩时在锁外建好新图后整体替换 */
+    private HnswIndex hnsw;
+    private KeywordIndex keywords = new KeywordIndex();
+    private RowIndex rows = new RowIndex();
+    private VectorMatrix matrix;
+    private String[] ids = new String[0];
+    private SegmentStore segments = new SegmentStore();
+    /** 墓碑位图，写时复制：已发布给 view 的位图不再改动，下一次删除先复制一份 */
+    private BitSet deleted = new BitSet();
+    private boolean deletedPublished;
+    /** 已占用行数（含墓碑） */
+    private int size;
+    private int deletedCount;
+    /** 行号体系的代数：clear / 加载快照 / 压缩后递增，压缩据此判断旁路建好的结构是否仍然适用 */
+    private long generation;
+
+    /** 检索使用的不可变视图，每次写入结束时整体替换 */
+    private volatile View view;
+    /** 每次增删更新，用于判断快照与检索结果缓存是否过期 */
+    private final AtomicLong version = new AtomicLong();
+    private final AtomicBoolean compactionScheduled = new AtomicBoolean();
+
+    /**
+     * 已发布的一致视图：行号小于 size 的数据在发布前写好，之后写方只追加更大的行号，或者复制后整体替换
+     * （墓碑位图、压缩后的各结构），因此检索拿到视图后无需加锁，也不会看到写了一半的行。
+     * entry 为发布时的 HNSW 入口点，保证图检索不从视图之外的节点出发。
+     */
+    private record View(long generation, VectorMatrix matrix, String[] ids, SegmentStore segments, BitSet deleted,
+                        int size, int deletedCount, HnswIndex hnsw, HnswIndex.Entry entry, KeywordIndex keywords,
+                        RowIndex rows) {}
+
+    public InterviewEmbeddingStore() {
+        this(new Options());
+    }
+
+    public InterviewEmbeddingStore(Storage storage) {
+        this(new Options().storage(storage));
+    }
+
+    public InterviewEmbeddingStore(Options options) {
+        this(options, options.parallelism > 0 ? new ForkJoinPool(options.parallelism) : null);
+    }
+
+    private InterviewEmbeddingStore(Options options, ForkJoinPool scanPool) {
+        this.options = options;
+        this.storage = options.storage;
+        this.quantization = options.quantization;
+        this.rerankFactor = options.quantization == Quantization.INT8 ? options.rerankFactor : 0;
+        this.scanPool = scanPool;
+        this.parallelThreshold = options.parallelThreshold;
+        this.hnsw = options.index == IndexType.HNSW ? newHnsw(options.hnswEfSearch) : null;
+        publish();
+    }
+
+    private HnswIndex newHnsw(int efSearch) {
+        return new HnswIndex(options.hnswM, options.hnswEfConstruction, efSearch);
+    }
+
+    /** 同配置的空库（共用并行扫描线程池），用于后台全量重建后整体替换 */
+    public InterviewEmbeddingStore emptyCopy() {
+        InterviewEmbeddingStore copy = new InterviewEmbeddingStore(options, scanPool);
+        HnswIndex graph = view.hnsw();
+        if (graph != null) copy.setEfSearch(graph.efSearch());
+        return copy;
+    }
+
+    public IndexType indexType() {
+        return options.index;
+    }
 
-        Entry(String id, float[] vector, TextSegment segment) {
-            this.id = id;
-            this.vector = vector;
-            this.segment = segment;
+    /** 运行时调整 HNSW 检索的 efSearch，FLAT 模式下无效 */
+    public void setEfSearch(int efSearch) {
+        writeLock.lock();
+        try {
+            if (hnsw != null) hnsw.setEfSearch(efSearch);
+        } finally {
+            writeLock.unlock();
         }
     }
 
+    /** 以当前工作状态发布新视图，调用方持有 writeLock */
+    private void publish() {
+        deletedPublished = true;
+        view = new View(generation, matrix, ids, segments, deleted, size, deletedCount,
+                hnsw, hnsw != null ? hnsw.entry() : null, keywords, rows);
+    }
+
     @Override
     public String add(Embedding embedding) {
         String id = UUID.randomUUID().toString();
-        entries.add(new Entry(id, embedding.vector(), null));
+        append(id, embedding.vector(), null);
         return id;
     }
 
     @Override
     public String add(Embedding embedding, TextSegment segment) {
         String id = UUID.randomUUID().toString();
-        entries.add(new Entry(id, embedding.vector(), segment));
+        append(id, embedding.vector(), segment);
         return id;
     }
 
     @Override
     public void add(String id, Embedding embedding) {
-        entries.add(new Entry(id, embedding.vector(), null));
+        append(id, embedding.vector(), null);
     }
 
     @Override
@@ -65,67 +323,755 @@ public class InterviewEmbeddingStore implements EmbeddingStore<TextSegment> {
         if (embeddings.size() != segments.size()) {
             throw new IllegalArgumentException("embeddings and segments size must match");
         }
-        List<String> ids = new ArrayList<>(embeddings.size());
-        for (int i = 0; i < embeddings.size(); i++) {
-            ids.add(add(embeddings.get(i), segments.get(i)));
+        // 归一化在锁外完成，整批只取一次写锁、发布一次视图
+        float[][] normalized = new float[embeddings.size()][];
+        List<String> newIds = new ArrayList<>(embeddings.size());
+        for (int i = 0; i < normalized.length; i++) {
+            float[] v = embeddings.get(i).vector();
+            normalized[i] = VectorMatrix.normalize(Arrays.copyOf(v, v.length));
+            newIds.add(UUID.randomUUID().toString());
         }
-        return ids;
+        writeLock.lock();
+        try {
+            for (int i = 0; i < normalized.length; i++) {
+                appendLocked(newIds.get(i), normalized[i], segments.get(i));
+            }
+            publish();
+        } finally {
+            writeLock.unlock();
+        }
+        return newIds;
+    }
+
+    private void append(String id, float[] vector, TextSegment segment) {
+        float[] normalized = VectorMatrix.normalize(Arrays.copyOf(vector, vector.length));
+        writeLock.lock();
+        try {
+            appendLocked(id, normalized, segment);
+            publish();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /** 追加到第 size 行（尚未发布，检索看不到），调用方持有 writeLock 并在之后发布 */
+    private void appendLocked(String id, float[] normalized, TextSegment segment) {
+        if (matrix == null) {
+            matrix = newMatrix(normalized.length, INITIAL_CAPACITY);
+            ids = new String[INITIAL_CAPACITY];
+            segments.ensureCapacity(INITIAL_CAPACITY);
+        } else if (matrix.dimension() != normalized.length) {
+            throw new IllegalArgumentException("embedding dimension mismatch: expected "
+                    + matrix.dimension() + ", got " + normalized.length);
+        }
+        if (size == ids.length) {
+            int next = ids.length * 2;
+            ids = Arrays.copyOf(ids, next);
+            segments.ensureCapacity(next);
+        }
+        if (size >= matrix.capacity()) {
+            matrix = matrix.grow(Math.max(size + 1, ids.length), size);
+        }
+        // 同一 id 再次写入视为覆盖
+        Integer previous = id != null ? rows.rowById.get(id) : null;
+        if (previous != null) markDeleted(previous);
+        matrix.set(size, normalized);
+        ids[size] = id;
+        segments.set(size, segment);
+        if (hnsw != null) hnsw.insert(size, normalized, matrix);
+        if (segment != null) keywords.add(size, keywordText(segment));
+        rows.add(size, id, segments);
+        size++;
+        bumpVersion();
+        // 覆盖写入留下了墓碑，与删除一样在墓碑过多时触发后台压缩
+        if (previous != null) scheduleCompaction();
     }
 
     @Override
     public void remove(String id) {
-        entries.removeIf(e -> e.id.equals(id));
+        if (id == null) return;
+        writeLock.lock();
+        try {
+            Integer row = rows.rowById.get(id);
+            if (row == null) return;
+            markDeleted(row);
+            publish();
+            scheduleCompaction();
+        } finally {
+            writeLock.unlock();
+        }
     }
 
     /** 移除某条面经的所有块，用于该面经重新索引前清理 */
     public void removeByExperienceId(Long experienceId) {
         if (experienceId == null) return;
-        String sid = experienceId.toString();
-        entries.removeIf(e -> {
-            if (e.segment == null || e.segment.metadata() == null) return false;
-            Object v = e.segment.metadata().get(META_EXPERIENCE_ID);
-            return sid.equals(v != null ? v.toString() : null);
-        });
+        writeLock.lock();
+        try {
+            int[] experienceRows = rows.rowsByExperience.get(experienceId);
+            if (experienceRows == null) return;
+            for (int row : experienceRows) markDeleted(row);
+            publish();
+            scheduleCompaction();
+        } finally {
+            writeLock.unlock();
+        }
     }
 
-    /** 清空所有向量，用于全量重建索引前 */
+    /** 清空所有向量，用于全量重建索引前；换上全新的空结构，持有旧视图的检索不受影响 */
     public void clear() {
-        entries.clear();
+        writeLock.lock();
+        try {
+            matrix = null;
+            ids = new String[0];
+            segments = new SegmentStore();
+            deleted = new BitSet();
+            size = 0;
+            deletedCount = 0;
+            if (hnsw != null) hnsw = newHnsw(hnsw.efSearch());
+            keywords = new KeywordIndex();
+            rows = new RowIndex();
+            generation++;
+            bumpVersion();
+            publish();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /** 当前有效向量条数（不含墓碑） */
+    public int size() {
+        View v = view;
+        return v.size() - v.deletedCount();
+    }
+
+    /** 满足过滤条件的有效块数，无过滤条件时为全部有效块数；用于统计过滤选择度 */
+    public int filteredSize(SearchFilter filter) {
+        View v = view;
+        BitSet allowed = allowedRows(v, filter);
+        if (allowed == null) return v.size() - v.deletedCount();
+        allowed.andNot(v.deleted());
+        return allowed.cardinality();
+    }
+
+    /** 块文本与元数据页占用的字节数 */
+    public long segmentBytes() {
+        return view.segments().bytesUsed();
+    }
+
+    /** 内容版本号，任何增删都会使其递增 */
+    public long version() {
+        return version.get();
+    }
+
+    private void bumpVersion() {
+        version.set(VERSION_SEQ.incrementAndGet());
+    }
+
+    /** 当前已索引的所有 experienceId */
+    public Set<Long> experienceIds() {
+        View v = view;
+        Set<Long> out = new HashSet<>();
+        for (Map.Entry<Long, int[]> e : v.rows().rowsByExperience.entrySet()) {
+            if (firstLiveRow(v, e.getValue()) >= 0) out.add(e.getKey());
+        }
+        return out;
+    }
+
+    public boolean containsExperience(long experienceId) {
+        View v = view;
+        int[] experienceRows = v.rows().rowsByExperience.get(experienceId);
+        return experienceRows != null && firstLiveRow(v, experienceRows) >= 0;
+    }
+
+    /** 向量维度，尚未写入任何向量时为 0 */
+    public int dimension() {
+        VectorMatrix m = view.matrix();
+        return m != null ? m.dimension() : 0;
+    }
+
+    /** 每个面经某一元数据项的值（取该面经任一块），如索引时写入的内容版本 */
+    public Map<Long, String> experienceMetadata(String key) {
+        View v = view;
+        Map<Long, String> out = new HashMap<>(v.rows().rowsByExperience.size() * 2);
+        for (Map.Entry<Long, int[]> e : v.rows().rowsByExperience.entrySet()) {
+            int row = firstLiveRow(v, e.getValue());
+            if (row >= 0) out.put(e.getKey(), v.segments().meta(row, key));
+        }
+        return out;
+    }
+
+    /** 行号索引由写方维护，可能已含视图之后追加的行，按视图的行数与墓碑过滤 */
+    private static int firstLiveRow(View v, int[] candidates) {
+        for (int row : candidates) {
+            if (row < v.size() && !v.deleted().get(row)) return row;
+        }
+        return -1;
+    }
+
+    /** 将存活行写入快照文件（原子替换），向量以归一化形式保存；基于当前视图，写出期间不阻塞增删 */
+    public void writeSnapshot(Path file, String modelId) throws IOException {
+        View v = view;
+        if (v.matrix() == null) return;
+        int[] live = new int[v.size() - v.deletedCount()];
+        int n = 0;
+        for (int row = 0; row < v.size(); row++) {
+            if (!v.deleted().get(row)) live[n++] = row;
+        }
+        EmbeddingSnapshot.write(file, modelId, v.matrix(), live, v.ids(), v.segments()::get);
     }
 
+    /** 快照文件所属的 Embedding 模型 id；文件不存在或格式版本不符时返回 null */
+    public static String snapshotModelId(Path file) throws IOException {
+        EmbeddingSnapshot.Header header = EmbeddingSnapshot.readHeader(file);
+        if (header == null || header.formatVersion() != EmbeddingSnapshot.FORMAT_VERSION) return null;
+        return header.modelId();
+    }
 
+    /**
+     * 从快照恢复（覆盖当前内容）。快照不存在、格式版本不符或模型 id 不一致时返回 false 且不改动当前内容。
+     */
+    public boolean loadSnapshot(Path file, String modelId) throws IOException {
+        EmbeddingSnapshot.Header header = EmbeddingSnapshot.readHeader(file);
+        if (header == null || header.formatVersion() != EmbeddingSnapshot.FORMAT_VERSION
+                || !modelId.equals(header.modelId()) || header.dim() <= 0) {
+            return false;
+        }
+        int capacity = Math.max(INITIAL_CAPACITY, header.rows());
+        VectorMatrix loaded = newMatrix(header.dim(), capacity);
+        String[] loadedIds = new String[capacity];
+        // 先在锁外把整份快照解析进新的矩阵 / 紧凑存储 / 关键词索引，文件损坏时抛出异常、当前内容不受影响；
+        // 逐行写入紧凑存储，不在内存中保留整份 TextSegment 数组
+        EmbeddingSnapshot.readVectors(file, header, loaded);
+        SegmentStore loadedSegments = new SegmentStore();
+        loadedSegments.ensureCapacity(capacity);
+        KeywordIndex loadedKeywords = new KeywordIndex();
+        EmbeddingSnapshot.readRows(file, header, loadedIds, (seg, row) -> {
+            loadedSegments.set(row, seg);
+            loadedKeywords.add(row, keywordText(seg));
+        });
+        RowIndex loadedRows = new RowIndex();
+        for (int row = 0; row < header.rows(); row++) {
+            loadedRows.add(row, loadedIds[row], loadedSegments);
+        }
+        // HNSW 建图是 O(N log N)，同样在锁外对新矩阵完成，检索在此期间继续使用旧图
+        HnswIndex loadedHnsw = null;
+        if (options.index == IndexType.HNSW) {
+            loadedHnsw = newHnsw(options.hnswEfSearch);
+            float[] buf = new float[header.dim()];
+            for (int row = 0; row < header.rows(); row++) {
+                loaded.get(row, buf);
+                loadedHnsw.insert(row, buf, loaded);
+            }
+        }
+        writeLock.lock();
+        try {
+            matrix = loaded;
+            ids = loadedIds;
+            segments = loadedSegments;
+            keywords = loadedKeywords;
+            rows = loadedRows;
+            if (loadedHnsw != null) {
+                // 以替换时的 efSearch 为准（建图期间可能调整过）
+                loadedHnsw.setEfSearch(hnsw.efSearch());
+                hnsw = loadedHnsw;
+            }
+            deleted = new BitSet();
+            size = header.rows();
+            deletedCount = 0;
+            generation++;
+            bumpVersion();
+            publish();
+            return true;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private VectorMatrix newMatrix(int dim, int capacity) {
+        return VectorMatrix.segmented(dim, capacity, SEGMENT_ROWS,
+                rows -> VectorMatrix.create(storage, quantization, rerankFactor > 0, dim, rows));
+    }
+
+    /** 只打墓碑并更新关键词统计与行号索引；行数据保持不动，持有旧视图的检索仍可读取 */
+    private void markDeleted(int row) {
+        if (deleted.get(row)) return;
+        if (deletedPublished) {
+            deleted = (BitSet) deleted.clone();
+            deletedPublished = false;
+        }
+        deleted.set(row);
+        if (segments.has(row)) keywords.remove(row);
+        rows.remove(row, ids[row], segments);
+        deletedCount++;
+        bumpVersion();
+    }
+
+    /** 立即压缩墓碑行（墓碑占比未到阈值时不处理）；正常情况下由删除操作触发后台压缩 */
+    public void compact() {
+        compactLock.lock();
+        try {
+            maybeCompact();
+        } finally {
+            compactLock.unlock();
+        }
+    }
+
+    private boolean needsCompaction() {
+        return deletedCount > 0 && deletedCount >= size * COMPACT_RATIO;
+    }
+
+    /** 调用方持有写锁；同一时刻最多排队一个压缩任务 */
+    private void scheduleCompaction() {
+        if (!needsCompaction() || !compactionScheduled.compareAndSet(false, true)) return;
+        COMPACTOR.execute(() -> {
+            compactionScheduled.set(false);
+            compact();
+        });
+    }
+
+    /**
+     * 压缩分两步：先不持锁，按当前视图把存活行拷进新的矩阵 / 紧凑存储，并生成新行号下的关键词索引、HNSW 图与行号索引，
+     * 增删与检索照常进行；再持写锁补上这期间新打的墓碑与新追加的行，整体换上新结构并发布新视图。
+     * 期间若 clear 或加载了快照，旁路建好的结构作废。调用方持有 compactLock。
+     */
+    private void maybeCompact() {
+        View base = view;
+        if (base.deletedCount() == 0 || base.deletedCount() < base.size() * COMPACT_RATIO) return;
+        int[] oldToNew = new int[base.size()];
+        int n = 0;
+        for (int row = 0; row < base.size(); row++) {
+            oldToNew[row] = base.deleted().get(row) ? -1 : n++;
+        }
+        int capacity = Math.max(INITIAL_CAPACITY, n);
+        VectorMatrix nextMatrix = newMatrix(base.matrix().dimension(), capacity);
+        String[] nextIds = new String[capacity];
+        SegmentStore nextSegments = base.segments().emptyCopy();
+        nextSegments.ensureCapacity(capacity);
+        int docs = 0;
+        for (int row = 0; row < base.size(); row++) {
+            int to = oldToNew[row];
+            if (to < 0) continue;
+            base.matrix().copyRowTo(row, nextMatrix, to);
+            nextIds[to] = base.ids()[row];
+            nextSegments.copyRow(base.segments(), row, to);
+            if (nextSegments.has(to)) docs++;
+        }
+        KeywordIndex nextKeywords = base.keywords().compacted(oldToNew, n, docs);
+        HnswIndex nextHnsw = base.hnsw() != null ? base.hnsw().compacted(oldToNew, n, nextMatrix) : null;
+        RowIndex nextRows = new RowIndex();
+        for (int row = 0; row < n; row++) {
+            nextRows.add(row, nextIds[row], nextSegments);
+        }
 
-    /** 返回当前所有 TextSegment（仅用于关键词召回/统计等非向量检索场景） */
+        writeLock.lock();
+        try {
+            if (generation != base.generation()) return;
+            // 压缩期间被删除的旧行：在新行号下补打墓碑
+            BitSet nextDeleted = new BitSet();
+            int nextDeletedCount = 0;
+            for (int row = deleted.nextSetBit(0); row >= 0 && row < base.size(); row = deleted.nextSetBit(row + 1)) {
+                int to = oldToNew[row];
+                if (to < 0) continue;
+                nextDeleted.set(to);
+                nextDeletedCount++;
+                if (nextSegments.has(to)) nextKeywords.remove(to);
+                nextRows.remove(to, nextIds[to], nextSegments);
+            }
+            // 压缩期间追加的行：已被删除的直接丢弃，其余接到新结构末尾
+            float[] buf = new float[matrix.dimension()];
+            for (int row = base.size(); row < size; row++) {
+                if (deleted.get(row)) continue;
+                if (n == nextIds.length) {
+                    nextIds = Arrays.copyOf(nextIds, n * 2);
+                    nextSegments.ensureCapacity(n * 2);
+                }
+                if (n >= nextMatrix.capacity()) nextMatrix = nextMatrix.grow(Math.max(n + 1, nextIds.length), n);
+                matrix.copyRowTo(row, nextMatrix, n);
+                nextIds[n] = ids[row];
+                nextSegments.copyRow(segments, row, n);
+                if (nextHnsw != null) {
+                    matrix.get(row, buf);
+                    nextHnsw.insert(n, buf, nextMatrix);
+                }
+                if (nextSegments.has(n)) nextKeywords.add(n, keywordText(nextSegments.get(n)));
+                nextRows.add(n, nextIds[n], nextSegments);
+                n++;
+            }
+            if (nextHnsw != null) nextHnsw.setEfSearch(hnsw.efSearch());
+            matrix = nextMatrix;
+            ids = nextIds;
+            segments = nextSegments;
+            keywords = nextKeywords;
+            hnsw = nextHnsw;
+            rows = nextRows;
+            deleted = nextDeleted;
+            size = n;
+            deletedCount = nextDeletedCount;
+            generation++;
+            // 内容未变，不更新版本号
+            publish();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * 关键词召回：用 {@link TextAnalyzer} 切分查询，经倒排索引做 BM25 打分，只触达命中的块，返回分数最高的 limit 个（降序）。
+     * score 为归一化到 [0, 1] 的 BM25 分（按 idf 加权的查询词覆盖率）。
+     */
+    public List<KeywordMatch> keywordSearch(String query) {
+        return keywordSearch(query, null, DEFAULT_KEYWORD_LIMIT);
+    }
+
+    public List<KeywordMatch> keywordSearch(String query, SearchFilter filter) {
+        return keywordSearch(query, filter, DEFAULT_KEYWORD_LIMIT);
+    }
+
+    /**
+     * 带过滤条件的关键词召回：不在过滤分区内的块不参与打分；与过滤条件重复的查询词（如查询里的公司名）
+     * 在分区内没有区分度，直接去掉，不会仅凭公司 / 部门名命中。
+     */
+    public List<KeywordMatch> keywordSearch(String query, SearchFilter filter, int limit) {
+        List<String> terms = keywordTerms(query, filter);
+        if (terms.isEmpty() || limit <= 0) return List.of();
+        View v = view;
+        BitSet allowed = allowedRows(v, filter);
+        if (allowed != null && allowed.isEmpty()) return List.of();
+        NodeHeap top = v.keywords().search(terms, v.deleted(), allowed, limit, v.size());
+        KeywordMatch[] out = new KeywordMatch[top.size()];
+        for (int i = out.length - 1; i >= 0; i--) {
+            int row = top.topNode();
+            float score = top.topScore();
+            top.pop();
+            out[i] = v.segments().has(row) ? new KeywordMatch(v.ids()[row], v.segments().get(row), score) : null;
+        }
+        List<KeywordMatch> result = new ArrayList<>(out.length);
+        for (KeywordMatch m : out) {
+            if (m != null) result.add(m);
+        }
+        return result;
+    }
+
+    /**
+     * 指定块的关键词分：与 {@link #keywordSearch} 同一打分口径与查询词处理，但不经过 top-N 截断，
+     * 供融合阶段给关键词 top 之外的向量候选补分。返回 块 id → 分数，未命中或不存在的 id 不出现。
+     */
+    public Map<String, Double> keywordScores(String query, SearchFilter filter, Collection<String> chunkIds) {
+        List<String> terms = keywordTerms(query, filter);
+        if (terms.isEmpty() || chunkIds.isEmpty()) return Map.of();
+        View v = view;
+        String[] wanted = chunkIds.toArray(new String[0]);
+        int[] candidates = new int[wanted.length];
+        for (int i = 0; i < wanted.length; i++) {
+            Integer row = wanted[i] != null ? v.rows().rowById.get(wanted[i]) : null;
+            candidates[i] = row != null ? row : -1;
+        }
+        float[] scores = v.keywords().score(terms, v.deleted(), candidates, v.size());
+        Map<String, Double> out = new HashMap<>();
+        for (int i = 0; i < wanted.length; i++) {
+            if (scores[i] > 0) out.put(wanted[i], (double) scores[i]);
+        }
+        return out;
+    }
+
+    /** 查询词：带过滤时去掉与公司 / 部门过滤值重复的词（分区内没有区分度） */
+    private static List<String> keywordTerms(String query, SearchFilter filter) {
+        List<String> terms = TextAnalyzer.queryTerms(query);
+        if (filter != null) {
+            terms.removeAll(TextAnalyzer.queryTerms(filter.company()));
+            terms.removeAll(TextAnalyzer.queryTerms(filter.department()));
+        }
+        return terms;
+    }
+
+    /**
+     * 关键词索引所用文本：公司 + 部门 + 类型 + 正文。元数据保留在索引里，不带过滤的查询（如「字节 后端 面经」）
+     * 仍能靠公司 / 部门 / 类型命中；带过滤时 {@link #keywordSearch} 会去掉与过滤条件重复的查询词。
+     */
+    static String keywordText(TextSegment seg) {
+        if (seg == null) return "";
+        String text = seg.text() != null ? seg.text() : "";
+        return metaOf(seg, META_COMPANY) + " " + metaOf(seg, META_DEPARTMENT) + " " + metaOf(seg, META_TYPE) + " " + text;
+    }
+
+    private static String metaOf(TextSegment seg, String key) {
+        if (seg.metadata() == null) return "";
+        Object v = seg.metadata().get(key);
+        return v != null ? v.toString() : "";
+    }
+
+    /** 返回当前所有 TextSegment（仅用于统计等非向量检索场景） */
     public List<TextSegment> allSegments() {
-        return entries.stream()
-                .map(e -> e.segment)
-                .filter(s -> s != null)
-                .collect(Collectors.toList());
+        View v = view;
+        List<TextSegment> out = new ArrayList<>(v.size() - v.deletedCount());
+        for (int row = 0; row < v.size(); row++) {
+            if (!v.deleted().get(row) && v.segments().has(row)) out.add(v.segments().get(row));
+        }
+        return out;
     }
+
+    /** 返回的 Embedding 为归一化后的向量 */
     @Override
     public List<EmbeddingMatch<TextSegment>> findRelevant(Embedding referenceEmbedding, int maxResults, double minScore) {
+        return findRelevant(referenceEmbedding, maxResults, minScore, null);
+    }
+
+    /**
+     * 带过滤条件的向量检索：先由分区位图求出允许的行，FLAT 只扫描这些行；
+     * HNSW 在分区较小时直接精确扫描分区，否则在图遍历中只收录分区内的节点并按选择度放大 ef。
+     * 全程只读调用时的视图，不加锁。
+     */
+    public List<EmbeddingMatch<TextSegment>> findRelevant(Embedding referenceEmbedding, int maxResults, double minScore,
+                                                          SearchFilter filter) {
         float[] ref = referenceEmbedding.vector();
-        return entries.stream()
-                .map(e -> {
-                    double score = cosineScore(ref, e.vector);
-                    Embedding emb = new Embedding(e.vector);
-                    return new EmbeddingMatch<>(score, e.id, emb, e.segment);
-                })
-                .filter(m -> m.score() >= minScore)
-                .sorted((a, b) -> Double.compare(b.score(), a.score()))
-                .limit(maxResults)
-                .collect(Collectors.toList());
-    }
-
-    private static double cosineScore(float[] a, float[] b) {
-        if (a == null || b == null || a.length != b.length) return 0;
-        double dot = 0, na = 0, nb = 0;
-        for (int i = 0; i < a.length; i++) {
-            dot += a[i] * b[i];
-            na += a[i] * a[i];
-            nb += b[i] * b[i];
-        }
-        if (na == 0 || nb == 0) return 0;
-        return dot / (Math.sqrt(na) * Math.sqrt(nb));
+        View v = view;
+        VectorMatrix m = v.matrix();
+        if (m == null || maxResults <= 0 || ref == null || ref.length != m.dimension()) {
+            return List.of();
+        }
+        BitSet allowed = allowedRows(v, filter);
+        if (allowed != null) allowed.andNot(v.deleted());
+        if (allowed != null && allowed.isEmpty()) return List.of();
+        float[] query = VectorMatrix.normalize(Arrays.copyOf(ref, ref.length));
+        int live = v.size() - v.deletedCount();
+        int k = Math.min(maxResults, allowed != null ? allowed.cardinality() : live);
+        if (k <= 0) return List.of();
+        float min = (float) minScore;
+        // 量化近似分数：先放宽阈值多取候选，精排后再按原阈值截断
+        int finalK = k;
+        boolean rerank = rerankFactor > 0 && m.approximate();
+        if (rerank) {
+            k = Math.min((int) Math.min(Integer.MAX_VALUE, (long) k * rerankFactor),
+                    allowed != null ? allowed.cardinality() : live);
+            min -= QUANTIZED_SCORE_SLACK;
+        }
+        NodeHeap top = new NodeHeap(k);
+        int allowedCount = allowed != null ? allowed.cardinality() : live;
+        HnswIndex graph = v.hnsw();
+        if (graph != null && (allowed == null || allowedCount > FILTERED_BRUTE_FORCE_LIMIT)) {
+            // k 在量化精排时已放大为 maxResults × rerankFactor，ef 至少要能容纳这么多候选
+            int ef = Math.max(k, graph.efSearch());
+            if (allowed != null) {
+                ef = (int) Math.min((long) ef * 10, (long) ef * Math.max(1, live) / Math.max(1, allowedCount));
+            }
+            NodeHeap found = graph.search(query, ef, m, v.deleted(), allowed, v.entry(), v.size());
+            for (int i = 0; i < found.size(); i++) {
+                offer(top, k, found.nodeAt(i), found.scoreAt(i), min);
+            }
+        } else if (allowed != null) {
+            for (int row = allowed.nextSetBit(0); row >= 0; row = allowed.nextSetBit(row + 1)) {
+                offer(top, k, row, m.dot(row, query), min);
+            }
+        } else if (scanPool != null && v.size() >= parallelThreshold) {
+            top = scanPool.invoke(new ScanTask(v, 0, v.size(), query, k, min));
+        } else {
+            scanRange(v, 0, v.size(), query, k, min, top);
+        }
+        if (rerank) {
+            NodeHeap exact = new NodeHeap(finalK);
+            while (!top.isEmpty()) {
+                int row = top.topNode();
+                top.pop();
+                offer(exact, finalK, row, m.exactDot(row, query), (float) minScore);
+            }
+            top = exact;
+        }
+        // 只为最终胜出的 K 个结果构造 EmbeddingMatch；小顶堆依次弹出为升序，倒序填充
+        EmbeddingMatch<TextSegment>[] winners = newMatchArray(top.size());
+        for (int i = winners.length - 1; i >= 0; i--) {
+            int row = top.topNode();
+            winners[i] = new EmbeddingMatch<>((double) top.topScore(), v.ids()[row], new Embedding(m.row(row)),
+                    v.segments().get(row));
+            top.pop();
+        }
+        return Arrays.asList(winners);
     }
+
+    /** 按块把分数写进复用的原始数组，再做 top-K 选择，扫描过程不分配对象 */
+    private static void scanRange(View v, int from, int to, float[] query, int k, float min, NodeHeap top) {
+        float[] block = SCORE_BLOCK.get();
+        for (int start = from; start < to; start += block.length) {
+            int n = Math.min(block.length, to - start);
+            v.matrix().dotBlock(start, n, query, block);
+            for (int i = 0; i < n; i++) {
+                if (block[i] < min || v.deleted().get(start + i)) continue;
+                offer(top, k, start + i, block[i], min);
+            }
+        }
+    }
+
+    /**
+     * 并行扫描：区间二分到 PARALLEL_LEAF_ROWS 以内后各自求局部 top-K，再逐级合并。
+     * 各工作线程读同一个视图，无需加锁。
+     */
+    private static final class ScanTask extends RecursiveTask<NodeHeap> {
+        private final View v;
+        private final int from;
+        private final int to;
+        private final float[] query;
+        private final int k;
+        private final float min;
+
+        ScanTask(View v, int from, int to, float[] query, int k, float min) {
+            this.v = v;
+            this.from = from;
+            this.to = to;
+            this.query = query;
+            this.k = k;
+            this.min = min;
+        }
+
+        @Override
+        protected NodeHeap compute() {
+            if (to - from <= PARALLEL_LEAF_ROWS) {
+                NodeHeap top = new NodeHeap(k);
+                scanRange(v, from, to, query, k, min, top);
+                return top;
+            }
+            // 切分点对齐打分块，避免块跨段
+            int mid = from + ((to - from) / 2 / 256) * 256;
+            ScanTask left = new ScanTask(v, from, mid, query, k, min);
+            left.fork();
+            NodeHeap right = new ScanTask(v, mid, to, query, k, min).compute();
+            NodeHeap merged = left.join();
+            for (int i = 0; i < right.size(); i++) {
+                offer(merged, k, right.nodeAt(i), right.scoreAt(i), min);
+            }
+            return merged;
+        }
+    }
+
+    /** 有界小顶堆维护当前最好的 k 个：未满直接入堆，满了只在优于堆顶时替换 */
+    private static void offer(NodeHeap top, int k, int row, float score, float min) {
+        if (score < min) return;
+        if (top.size() < k) {
+            top.push(row, score);
+        } else if (score > top.topScore()) {
+            top.pop();
+            top.push(row, score);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static EmbeddingMatch<TextSegment>[] newMatchArray(int n) {
+        return (EmbeddingMatch<TextSegment>[]) new EmbeddingMatch[n];
+    }
+
+    /**
+     * 过滤条件对应的行号位图（新副本，只含视图内的行，墓碑行仍在其中，由调用方按需剔除）；
+     * 无过滤条件时返回 null，任一条件无匹配时返回空位图
+     */
+    private static BitSet allowedRows(View v, SearchFilter filter) {
+        if (filter == null || filter.isEmpty()) return null;
+        RowIndex index = v.rows();
+        BitSet result = null;
+        if (filter.company() != null && !filter.company().isEmpty()) {
+            result = intersect(result, index.byCompany.get(filter.company()), v.size());
+        }
+        if (filter.department() != null && !filter.department().isEmpty()) {
+            result = intersect(result, index.byDepartment.get(filter.department()), v.size());
+        }
+        if (filter.types() != null && !filter.types().isEmpty()) {
+            BitSet union = new BitSet();
+            for (String t : filter.types()) {
+                RowBits b = index.byType.get(t);
+                if (b != null) union.or(b.snapshot(v.size()));
+            }
+            result = result == null ? union : and(result, union);
+        }
+        return result;
+    }
+
+    private static BitSet intersect(BitSet acc, RowBits part, int rows) {
+        if (part == null) return new BitSet();
+        BitSet bits = part.snapshot(rows);
+        return acc == null ? bits : and(acc, bits);
+    }
+
+    private static BitSet and(BitSet acc, BitSet part) {
+        acc.and(part);
+        return acc;
+    }
+
+    /**
+     * 按公司 / 部门 / 块类型的行号位图分区，以及 experienceId → 行号、id → 行号两张二级索引。
+     * 写方在写锁内更新，检索无锁读取：分区位图只置位（墓碑行由墓碑位图剔除，压缩时整份重建），
+     * 面经行号数组写时复制，读方按视图行数与墓碑过滤掉尚未发布或已删除的行。
+     */
+    private static final class RowIndex {
+        final Map<String, RowBits> byCompany = new ConcurrentHashMap<>();
+        final Map<String, RowBits> byDepartment = new ConcurrentHashMap<>();
+        final Map<String, RowBits> byType = new ConcurrentHashMap<>();
+        final Map<Long, int[]> rowsByExperience = new ConcurrentHashMap<>();
+        final Map<String, Integer> rowById = new ConcurrentHashMap<>();
+
+        void add(int row, String id, SegmentStore segments) {
+            if (segments.has(row)) {
+                partitionOf(byCompany, metaOf(segments, row, META_COMPANY)).set(row);
+                partitionOf(byDepartment, metaOf(segments, row, META_DEPARTMENT)).set(row);
+                partitionOf(byType, metaOf(segments, row, META_TYPE)).set(row);
+            }
+            if (id != null) rowById.put(id, row);
+            Long eid = experienceIdOf(segments, row);
+            if (eid == null) return;
+            rowsByExperience.merge(eid, new int[]{row}, (current, added) -> {
+                int[] next = Arrays.copyOf(current, current.length + 1);
+                next[current.length] = row;
+                return next;
+            });
+        }
+
+        void remove(int row, String id, SegmentStore segments) {
+            if (id != null) rowById.remove(id, row);
+            Long eid = experienceIdOf(segments, row);
+            if (eid == null) return;
+            rowsByExperience.computeIfPresent(eid, (k, current) -> {
+                int[] next = new int[current.length];
+                int n = 0;
+                for (int r : current) {
+                    if (r != row) next[n++] = r;
+                }
+                return n == 0 ? null : Arrays.copyOf(next, n);
+            });
+        }
+
+        private static RowBits partitionOf(Map<String, RowBits> partitions, String key) {
+            return partitions.computeIfAbsent(key, k -> new RowBits());
+        }
+
+        private static String metaOf(SegmentStore segments, int row, String key) {
+            String v = segments.meta(row, key);
+            return v != null ? v : "";
+        }
+
+        private static Long experienceIdOf(SegmentStore segments, int row) {
+            String v = segments.meta(row, META_EXPERIENCE_ID);
+            if (v == null || v.isEmpty()) return null;
+            try {
+                return Long.parseLong(v);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+    }
+
+    /** 只置位的行号位图：写方置位后重新发布字数组，读方取快照时丢弃视图之外的行 */
+    private static final class RowBits {
+        private volatile long[] words = new long[0];
+
+        void set(int row) {
+            int index = row >>> 6;
+            long[] current = words;
+            if (index >= current.length) current = Arrays.copyOf(current, Math.max(index + 1, current.length * 2));
+            current[index] |= 1L << row;
+            words = current;
+        }
+
+        BitSet snapshot(int rows) {
+            BitSet bits = BitSet.valueOf(words);
+            if (bits.length() > rows) bits.clear(rows, bits.length());
+            return bits;
+        }
+    }
+
 }
@@ -0,0 +1,244 @@
+package com.interview.assistant.config;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 关键词倒排索引 + BM25 打分：词项 → (行号, 词频) 倒排表，行号与 {@link InterviewEmbeddingStore} 的矩阵行一致。
+ * <p>
+ * 词项由 {@link TextAnalyzer} 切出（英文整词 + 中文二元组），同时记录每行文档长度与总长度，
+ * 检索时只遍历查询词项的倒排表并用定长堆保留 top，代价与命中量成正比、内存只与 limit 有关。
+ * 删除沿用存储的墓碑位图：被删行不再计入文档数/总长度，倒排表中的旧记录在压缩时由 {@link #compacted} 一并剔除
+ * （压缩前 df 会略微偏大，对排序影响可忽略）。
+ * <p>
+ * 单写多读：写方（持存储的写锁）只追加行，倒排表先写元素再发布长度；检索只看行号小于调用方视图行数的记录，
+ * 无需加锁。压缩时在旁边生成新索引，不改动正在被检索的这一份。
+ */
+final class KeywordIndex {
+
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    private final Map<String, Postings> postings = new ConcurrentHashMap<>();
+    private volatile int[] docLen = new int[0];
+    private volatile int docCount;
+    private volatile long totalLen;
+
+    /** 行号按追加顺序递增，倒排表天然有序 */
+    void add(int row, String text) {
+        Map<String, Integer> tf = new HashMap<>();
+        int[] len = {0};
+        TextAnalyzer.analyze(text, t -> {
+            tf.merge(t, 1, Integer::sum);
+            len[0]++;
+        });
+        int[] lens = docLen;
+        if (row >= lens.length) lens = Arrays.copyOf(lens, Math.max(row + 1, Math.max(16, lens.length * 2)));
+        lens[row] = len[0];
+        docLen = lens;
+        docCount++;
+        totalLen += len[0];
+        for (Map.Entry<String, Integer> e : tf.entrySet()) {
+            postings.computeIfAbsent(e.getKey(), k -> new Postings()).add(row, e.getValue());
+        }
+    }
+
+    /** 行被打墓碑时调用，更新文档统计；docLen 保持原值，持有旧视图的检索仍按原长度打分 */
+    void remove(int row) {
+        int[] lens = docLen;
+        if (row >= lens.length) return;
+        docCount--;
+        totalLen -= lens[row];
+    }
+
+    /**
+     * BM25 检索，只保留分数最高的 limit 行（小顶堆，堆中即结果，调用方自行排序）。
+     * 各查询词的倒排表按行号有序，逐行归并打分（document-at-a-time），不为每个命中分配对象；
+     * 只看行号小于 rows 的记录，allowed 非 null 时只有其中的行进入候选。
+     * 分数按「每个查询词都在平均长度文档中出现一次」时的 BM25 分（即 Σ idf）归一化并截断到 [0, 1]，
+     * 可理解为按 idf 加权的查询词覆盖率，可直接与向量相似度融合。
+     */
+    NodeHeap search(List<String> queryTerms, BitSet deleted, BitSet allowed, int limit, int rows) {
+        NodeHeap top = new NodeHeap(Math.max(1, limit));
+        if (queryTerms.isEmpty() || limit <= 0) return top;
+        Query q = prepare(queryTerms, rows);
+        if (q == null) return top;
+        int n = q.ends.length;
+        int[] cursor = new int[n];
+        while (true) {
+            int row = Integer.MAX_VALUE;
+            for (int i = 0; i < n; i++) {
+                if (cursor[i] < q.ends[i]) row = Math.min(row, q.rows[i][cursor[i]]);
+            }
+            if (row == Integer.MAX_VALUE) break;
+            boolean eligible = !deleted.get(row) && (allowed == null || allowed.get(row));
+            double score = 0;
+            for (int i = 0; i < n; i++) {
+                if (cursor[i] >= q.ends[i] || q.rows[i][cursor[i]] != row) continue;
+                if (eligible) score += q.termScore(i, q.tfs[i][cursor[i]], row);
+                cursor[i]++;
+            }
+            if (!eligible || score <= 0) continue;
+            float normalized = (float) Math.min(1.0, score / q.ideal);
+            if (top.size() < limit) {
+                top.push(row, normalized);
+            } else if (normalized > top.topScore()) {
+                top.pop();
+                top.push(row, normalized);
+            }
+        }
+        return top;
+    }
+
+    /**
+     * 对指定行直接打 BM25 分（与 {@link #search} 同一归一化口径），用于给不在关键词 top 内的向量候选补关键词分。
+     * 每行每个查询词在倒排表上二分查找，代价 O(行数 × 词数 × log df)，与语料规模无关；
+     * 被删、不小于 rows 或未命中的行分数为 0。
+     */
+    float[] score(List<String> queryTerms, BitSet deleted, int[] candidates, int rows) {
+        float[] out = new float[candidates.length];
+        if (queryTerms.isEmpty() || candidates.length == 0) return out;
+        Query q = prepare(queryTerms, rows);
+        if (q == null) return out;
+        for (int r = 0; r < candidates.length; r++) {
+            int row = candidates[r];
+            if (row < 0 || row >= rows || deleted.get(row)) continue;
+            double score = 0;
+            for (int i = 0; i < q.ends.length; i++) {
+                int at = Arrays.binarySearch(q.rows[i], 0, q.ends[i], row);
+                if (at >= 0) score += q.termScore(i, q.tfs[i][at], row);
+            }
+            out[r] = (float) Math.min(1.0, score / q.ideal);
+        }
+        return out;
+    }
+
+    /**
+     * 查询词 → 命中的倒排表快照（只含行号小于 rows 的前缀）与 idf；ideal 为归一化分母 Σ idf（含未命中词）。
+     * 文档统计在此读取一次，同一次检索内口径一致。没有可打分的词时返回 null。
+     */
+    private Query prepare(List<String> queryTerms, int rows) {
+        int docs = docCount;
+        if (docs <= 0) return null;
+        int[][] lists = new int[queryTerms.size()][];
+        int[][] freqs = new int[queryTerms.size()][];
+        int[] ends = new int[queryTerms.size()];
+        double[] idfs = new double[queryTerms.size()];
+        int n = 0;
+        double ideal = 0;
+        for (String term : queryTerms) {
+            Postings p = postings.get(term);
+            int size = p != null ? p.size : 0;
+            int[] r = p != null ? p.rows : null;
+            int end = size > 0 ? lowerBound(r, size, rows) : 0;
+            int df = Math.min(end, docs);
+            double idf = Math.log(1 + (docs - df + 0.5) / (df + 0.5));
+            ideal += idf;
+            if (end == 0) continue;
+            lists[n] = r;
+            freqs[n] = p.tfs;
+            ends[n] = end;
+            idfs[n] = idf;
+            n++;
+        }
+        if (n == 0 || ideal <= 0) return null;
+        double avgdl = Math.max(1.0, (double) totalLen / docs);
+        return new Query(Arrays.copyOf(lists, n), Arrays.copyOf(freqs, n), Arrays.copyOf(ends, n),
+                Arrays.copyOf(idfs, n), ideal, avgdl, docLen);
+    }
+
+    /** 有序数组前 size 个元素中第一个不小于 key 的下标 */
+    private static int lowerBound(int[] sorted, int size, int key) {
+        int lo = 0;
+        int hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (sorted[mid] < key) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    private record Query(int[][] rows, int[][] tfs, int[] ends, double[] idfs, double ideal, double avgdl, int[] docLen) {
+        double termScore(int term, int tf, int row) {
+            double norm = K1 * (1 - B + B * docLen[row] / avgdl);
+            return idfs[term] * tf * (K1 + 1) / (tf + norm);
+        }
+    }
+
+    /**
+     * 压缩：按 oldToNew 生成新行号下的新索引（-1 的行剔除，行号不小于 oldToNew.length 的新追加记录不带入），
+     * 本索引保持不变，可在写入继续追加的同时在旁边完成。docCount 为新索引中建过关键词的行数。
+     */
+    KeywordIndex compacted(int[] oldToNew, int newRows, int docCount) {
+        KeywordIndex next = new KeywordIndex();
+        int[] lens = docLen;
+        int[] nextLen = new int[Math.max(16, newRows)];
+        long total = 0;
+        for (int old = 0; old < oldToNew.length && old < lens.length; old++) {
+            if (oldToNew[old] < 0) continue;
+            nextLen[oldToNew[old]] = lens[old];
+            total += lens[old];
+        }
+        for (Map.Entry<String, Postings> e : postings.entrySet()) {
+            Postings remapped = e.getValue().remapped(oldToNew);
+            if (remapped != null) next.postings.put(e.getKey(), remapped);
+        }
+        next.docLen = nextLen;
+        next.docCount = docCount;
+        next.totalLen = total;
+        return next;
+    }
+
+    /** 单写多读的倒排表：先写元素（必要时换成扩容后的数组），最后写 size 发布 */
+    private static final class Postings {
+        volatile int[] rows = new int[4];
+        volatile int[] tfs = new int[4];
+        volatile int size;
+
+        void add(int row, int tf) {
+            int n = size;
+            int[] r = rows;
+            int[] t = tfs;
+            boolean grown = n == r.length;
+            if (grown) {
+                r = Arrays.copyOf(r, n * 2);
+                t = Arrays.copyOf(t, n * 2);
+            }
+            r[n] = row;
+            t[n] = tf;
+            if (grown) {
+                tfs = t;
+                rows = r;
+            }
+            size = n + 1;
+        }
+
+        /** 按 oldToNew 重写行号后的新倒排表，没有存活记录时返回 null */
+        Postings remapped(int[] oldToNew) {
+            int n = size;
+            int[] r = rows;
+            int[] t = tfs;
+            int[] nextRows = new int[Math.max(4, n)];
+            int[] nextTfs = new int[nextRows.length];
+            int w = 0;
+            for (int i = 0; i < n && r[i] < oldToNew.length; i++) {
+                int nr = oldToNew[r[i]];
+                if (nr < 0) continue;
+                nextRows[w] = nr;
+                nextTfs[w] = t[i];
+                w++;
+            }
+            if (w == 0) return null;
+            Postings out = new Postings();
+            out.rows = nextRows;
+            out.tfs = nextTfs;
+            out.size = w;
+            return out;
+        }
+    }
+}
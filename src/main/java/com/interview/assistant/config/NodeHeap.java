@@ -0,0 +1,83 @@
+package com.interview.assistant.config;
+
+import java.util.Arrays;
+
+/**
+ * (node, score) 的二叉小顶堆，分数与节点号分存两个原始数组，避免装箱。
+ * 需要大顶堆时按相反数入堆即可。
+ */
+final class NodeHeap {
+
+    private int[] nodes;
+    private float[] scores;
+    private int size;
+
+    NodeHeap(int initialCapacity) {
+        int cap = Math.max(initialCapacity, 4);
+        this.nodes = new int[cap];
+        this.scores = new float[cap];
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    void clear() {
+        size = 0;
+    }
+
+    void push(int node, float score) {
+        if (size == nodes.length) {
+            nodes = Arrays.copyOf(nodes, size * 2);
+            scores = Arrays.copyOf(scores, size * 2);
+        }
+        int i = size++;
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (scores[parent] <= score) break;
+            nodes[i] = nodes[parent];
+            scores[i] = scores[parent];
+            i = parent;
+        }
+        nodes[i] = node;
+        scores[i] = score;
+    }
+
+    int topNode() {
+        return nodes[0];
+    }
+
+    float topScore() {
+        return scores[0];
+    }
+
+    /** 弹出堆顶（最小分） */
+    void pop() {
+        int lastNode = nodes[--size];
+        float lastScore = scores[size];
+        int i = 0;
+        int half = size >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            if (child + 1 < size && scores[child + 1] < scores[child]) child++;
+            if (lastScore <= scores[child]) break;
+            nodes[i] = nodes[child];
+            scores[i] = scores[child];
+            i = child;
+        }
+        nodes[i] = lastNode;
+        scores[i] = lastScore;
+    }
+
+    int nodeAt(int i) {
+        return nodes[i];
+    }
+
+    float scoreAt(int i) {
+        return scores[i];
+    }
+}
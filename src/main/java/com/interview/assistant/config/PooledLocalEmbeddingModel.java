@@ -0,0 +1,210 @@
+package com.interview.assistant.config;
+
+import ai.onnxruntime.OrtEnvironment;
+import ai.onnxruntime.OrtException;
+import ai.onnxruntime.OrtSession;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.embedding.onnx.AbstractInProcessEmbeddingModel;
+import dev.langchain4j.model.embedding.onnx.OnnxBertBiEncoder;
+import dev.langchain4j.model.embedding.onnx.PoolingMode;
+import dev.langchain4j.model.output.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 本地 AllMiniLM-L6-v2 的会话池：模型文件只读一次，建 sessions 个 ONNX 会话（各自 threadsPerSession 个算子线程），
+ * 每次 embed / embedAll 借出一个会话，并发查询按会话数并行而不是挤在同一条推理路径上。
+ * <p>
+ * 构造时即加载并预热全部会话，启动后第一个查询不再承担模型加载开销；最近的单次耗时用于计算 p50 / p99。
+ * 与 {@link dev.langchain4j.model.embedding.onnx.allminilml6v2.AllMiniLmL6V2EmbeddingModel} 产出相同向量，
+ * 模型标识一致，快照与分块缓存可直接复用。
+ * ONNX 会话与 SessionOptions 持有原生内存，用完须 {@link #close}（作为 Spring Bean 时随容器关闭自动调用）。
+ */
+public class PooledLocalEmbeddingModel implements EmbeddingModel, AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(PooledLocalEmbeddingModel.class);
+
+    private static final String MODEL_RESOURCE = "all-minilm-l6-v2.onnx";
+    private static final String TOKENIZER_RESOURCE = "all-minilm-l6-v2-tokenizer.json";
+    private static final int DIMENSION = 384;
+    /** 保留最近多少次耗时用于计算分位数 */
+    private static final int LATENCY_WINDOW = 2048;
+    /** 关闭时等待借出会话归还的最长时间 */
+    private static final long CLOSE_WAIT_SECONDS = 10;
+    /** 等待空闲会话时每次轮询的时长，期间检查是否已关闭 */
+    private static final long ACQUIRE_POLL_MILLIS = 100;
+
+    /** 会话池运行统计，耗时单位毫秒 */
+    public record Stats(int sessions, int threadsPerSession, int idle, long calls, double p50Ms, double p99Ms) {}
+
+    private final BlockingQueue<EmbeddingModel> pool;
+    private final int sessions;
+    private final int threadsPerSession;
+    private final long[] latencies = new long[LATENCY_WINDOW];
+    private final AtomicLong calls = new AtomicLong();
+    /** 各会话的 OrtSession 与 SessionOptions，按创建顺序，关闭时逆序释放 */
+    private final List<AutoCloseable> resources = new ArrayList<>();
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    /**
+     * @param sessions          会话数，≤ 0 时取 1
+     * @param threadsPerSession 每个会话的算子线程数，≤ 0 时按 CPU 核数 / 会话数分配
+     * @param warmUp            是否在构造时对每个会话跑一次推理
+     */
+    public PooledLocalEmbeddingModel(int sessions, int threadsPerSession, boolean warmUp) {
+        this.sessions = Math.max(1, sessions);
+        this.threadsPerSession = threadsPerSession > 0 ? threadsPerSession
+                : Math.max(1, Runtime.getRuntime().availableProcessors() / this.sessions);
+        this.pool = new ArrayBlockingQueue<>(this.sessions);
+        long start = System.currentTimeMillis();
+        byte[] modelBytes = readResource(MODEL_RESOURCE);
+        OrtEnvironment env = OrtEnvironment.getEnvironment();
+        for (int i = 0; i < this.sessions; i++) {
+            pool.add(newSession(env, modelBytes));
+        }
+        if (warmUp) {
+            for (EmbeddingModel session : pool) session.embed("warm up");
+        }
+        log.info("本地 Embedding 会话池就绪: {} 个会话 × {} 线程，耗时 {} ms",
+                this.sessions, this.threadsPerSession, System.currentTimeMillis() - start);
+    }
+
+    @Override
+    public Response<List<Embedding>> embedAll(List<TextSegment> segments) {
+        EmbeddingModel session = acquire();
+        long start = System.nanoTime();
+        try {
+            return session.embedAll(segments);
+        } finally {
+            record(System.nanoTime() - start);
+            pool.add(session);
+        }
+    }
+
+    @Override
+    public int dimension() {
+        return DIMENSION;
+    }
+
+    public Stats stats() {
+        long n = calls.get();
+        int count = (int) Math.min(n, LATENCY_WINDOW);
+        long[] sorted;
+        synchronized (latencies) {
+            sorted = Arrays.copyOf(latencies, count);
+        }
+        Arrays.sort(sorted);
+        return new Stats(sessions, threadsPerSession, pool.size(), n, percentile(sorted, 0.50), percentile(sorted, 0.99));
+    }
+
+    /** 等借出的会话归还后释放全部 ONNX 会话；关闭后再调用 embed 抛出 IllegalStateException */
+    @Override
+    public void close() {
+        if (!closed.compareAndSet(false, true)) return;
+        try {
+            for (int i = 0; i < sessions; i++) {
+                if (pool.poll(CLOSE_WAIT_SECONDS, TimeUnit.SECONDS) == null) {
+                    log.warn("本地 Embedding 会话 {} 秒内未归还，直接释放", CLOSE_WAIT_SECONDS);
+                    break;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (int i = resources.size() - 1; i >= 0; i--) {
+            try {
+                resources.get(i).close();
+            } catch (Exception e) {
+                log.warn("释放本地 Embedding 会话失败: {}", e.getMessage());
+            }
+        }
+        resources.clear();
+    }
+
+    /**
+     * 借出会话：短超时轮询并反复检查 closed，close() 收走全部会话后等待者不会永久阻塞；
+     * 借到后发现已关闭则立即归还，交给正在等待归还的 close() 释放。
+     */
+    private EmbeddingModel acquire() {
+        try {
+            while (true) {
+                if (closed.get()) throw new IllegalStateException("本地 Embedding 会话池已关闭");
+                EmbeddingModel session = pool.poll(ACQUIRE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (session == null) continue;
+                if (closed.get()) {
+                    pool.add(session);
+                    throw new IllegalStateException("本地 Embedding 会话池已关闭");
+                }
+                return session;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("等待本地 Embedding 会话被中断", e);
+        }
+    }
+
+    private void record(long nanos) {
+        long n = calls.getAndIncrement();
+        synchronized (latencies) {
+            latencies[(int) (n % LATENCY_WINDOW)] = nanos;
+        }
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        if (sorted.length == 0) return 0;
+        int idx = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(idx, sorted.length - 1))] / 1_000_000.0;
+    }
+
+    /** 单个 ONNX 会话包装成 EmbeddingModel；批量请求在借出的线程内顺序推理，不再额外占用线程池 */
+    private EmbeddingModel newSession(OrtEnvironment env, byte[] modelBytes) {
+        try (InputStream tokenizer = openResource(TOKENIZER_RESOURCE)) {
+            OrtSession.SessionOptions options = new OrtSession.SessionOptions();
+            resources.add(options);
+            options.setIntraOpNumThreads(threadsPerSession);
+            OrtSession session = env.createSession(modelBytes, options);
+            resources.add(session);
+            OnnxBertBiEncoder encoder = new OnnxBertBiEncoder(env, session, tokenizer, PoolingMode.MEAN);
+            return new AbstractInProcessEmbeddingModel(Runnable::run) {
+                @Override
+                protected OnnxBertBiEncoder model() {
+                    return encoder;
+                }
+
+                @Override
+                protected Integer knownDimension() {
+                    return DIMENSION;
+                }
+            };
+        } catch (OrtException | IOException e) {
+            throw new IllegalStateException("加载本地 Embedding 模型失败", e);
+        }
+    }
+
+    private static byte[] readResource(String name) {
+        try (InputStream in = openResource(name)) {
+            return in.readAllBytes();
+        } catch (IOException e) {
+            throw new IllegalStateException("读取本地 Embedding 模型失败: " + name, e);
+        }
+    }
+
+    private static InputStream openResource(String name) throws IOException {
+        InputStream in = PooledLocalEmbeddingModel.class.getClassLoader().getResourceAsStream(name);
+        if (in == null) throw new IOException("classpath 中找不到 " + name);
+        return in;
+    }
+}
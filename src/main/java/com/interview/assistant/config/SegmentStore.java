@@ -0,0 +1,248 @@
+package com.interview.assistant.config;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.segment.TextSegment;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 块文本与元数据的紧凑存储，替代每行一个 TextSegment（各带一份 HashMap 元数据）。
+ * <p>
+ * 元数据的键、值分别字典编码为 int，每行只在共享 int 页中占 1 + 2n 个 int；文本以 UTF-8 写入共享的 1MB 字节页，
+ * 以「公司: …\n部门: …\n」开头且与元数据一致的文本只存正文，读取时按元数据还原前缀。
+ * TextSegment 只在 {@link #get} 时按需构造（检索结果、快照写出）。
+ * <p>
+ * 单写多读：写方（持 InterviewEmbeddingStore 的写锁）只追加新行、新页与新字典项，数组扩容时复制后整体替换；
+ * 已写入的行不再改动，检索线程可无锁读取已发布的行。删除只在存储侧打墓碑，压缩时由 {@link #copyRow} 把存活行拷到新实例。
+ */
+final class SegmentStore {
+
+    private static final int TEXT_PAGE_BYTES = 1 << 20;
+    private static final int META_PAGE_INTS = 1 << 16;
+    private static final long NONE = -1L;
+    private static final String META_COMPANY = "company";
+    private static final String META_DEPARTMENT = "department";
+
+    /** 键 / 值字典只追加，压缩出的新实例与原实例共用，行数据可按编号原样拷贝 */
+    private final Dictionary keys;
+    private final Dictionary values;
+
+    private volatile byte[][] textPages = new byte[0][];
+    private int textPos = TEXT_PAGE_BYTES;
+    private volatile int[][] metaPages = new int[0][];
+    private int metaPos = META_PAGE_INTS;
+
+    /** 文本位置：页号 << 32 | 页内偏移；NONE 表示该行没有 TextSegment */
+    private volatile long[] textRef = new long[0];
+    private volatile int[] textLen = new int[0];
+    private volatile boolean[] prefixed = new boolean[0];
+    /** 元数据位置：页号 << 32 | 页内偏移，该处依次为 n, k1, v1, …, kn, vn */
+    private volatile long[] metaRef = new long[0];
+
+    SegmentStore() {
+        this(new Dictionary(), new Dictionary());
+    }
+
+    private SegmentStore(Dictionary keys, Dictionary values) {
+        this.keys = keys;
+        this.values = values;
+    }
+
+    /** 与本实例共用字典的空存储，用于压缩时在旁边拷出存活行 */
+    SegmentStore emptyCopy() {
+        return new SegmentStore(keys, values);
+    }
+
+    int capacity() {
+        return textRef.length;
+    }
+
+    void ensureCapacity(int rows) {
+        if (rows <= textRef.length) return;
+        int old = textRef.length;
+        long[] nextText = Arrays.copyOf(textRef, rows);
+        Arrays.fill(nextText, old, rows, NONE);
+        textLen = Arrays.copyOf(textLen, rows);
+        prefixed = Arrays.copyOf(prefixed, rows);
+        metaRef = Arrays.copyOf(metaRef, rows);
+        textRef = nextText;
+    }
+
+    void set(int row, TextSegment seg) {
+        if (seg == null) {
+            textRef[row] = NONE;
+            return;
+        }
+        Map<String, Object> meta = seg.metadata() != null ? seg.metadata().toMap() : Map.of();
+        int[] encoded = new int[1 + meta.size() * 2];
+        int n = 0;
+        for (Map.Entry<String, Object> e : meta.entrySet()) {
+            if (e.getValue() == null) continue;
+            encoded[1 + n * 2] = keys.intern(e.getKey());
+            encoded[2 + n * 2] = values.intern(e.getValue().toString());
+            n++;
+        }
+        encoded[0] = n;
+        metaRef[row] = appendInts(encoded, 0, 1 + n * 2);
+
+        String text = seg.text() != null ? seg.text() : "";
+        String prefix = prefixOf(valueOf(meta, META_COMPANY), valueOf(meta, META_DEPARTMENT));
+        prefixed[row] = text.startsWith(prefix);
+        byte[] bytes = (prefixed[row] ? text.substring(prefix.length()) : text).getBytes(StandardCharsets.UTF_8);
+        textLen[row] = bytes.length;
+        textRef[row] = appendBytes(bytes, 0, bytes.length);
+    }
+
+    boolean has(int row) {
+        long[] refs = textRef;
+        return row < refs.length && refs[row] != NONE;
+    }
+
+    /** 按需还原 TextSegment；没有则返回 null */
+    TextSegment get(int row) {
+        if (!has(row)) return null;
+        Map<String, Object> meta = new HashMap<>();
+        long mref = metaRef[row];
+        int[] page = metaPages[page(mref)];
+        int off = offset(mref);
+        int n = page[off];
+        for (int i = 0; i < n; i++) {
+            meta.put(keys.get(page[off + 1 + i * 2]), values.get(page[off + 2 + i * 2]));
+        }
+        long tref = textRef[row];
+        String body = new String(textPages[page(tref)], offset(tref), textLen[row], StandardCharsets.UTF_8);
+        String text = prefixed[row]
+                ? prefixOf(valueOf(meta, META_COMPANY), valueOf(meta, META_DEPARTMENT)) + body
+                : body;
+        return TextSegment.from(text, new Metadata(meta));
+    }
+
+    /** 读取单个元数据值，不构造 TextSegment；没有该键时返回 null */
+    String meta(int row, String key) {
+        if (!has(row)) return null;
+        Integer keyId = keys.id(key);
+        if (keyId == null) return null;
+        long mref = metaRef[row];
+        int[] page = metaPages[page(mref)];
+        int off = offset(mref);
+        int n = page[off];
+        for (int i = 0; i < n; i++) {
+            if (page[off + 1 + i * 2] == keyId) return values.get(page[off + 2 + i * 2]);
+        }
+        return null;
+    }
+
+    /** 把共用字典的 src 第 from 行原样拷到本实例第 to 行（文本与元数据只拷字节，不重新编码） */
+    void copyRow(SegmentStore src, int from, int to) {
+        if (src.keys != keys || src.values != values) throw new IllegalArgumentException("dictionary mismatch");
+        if (!src.has(from)) {
+            textRef[to] = NONE;
+            return;
+        }
+        long mref = src.metaRef[from];
+        int[] meta = src.metaPages[page(mref)];
+        int off = offset(mref);
+        metaRef[to] = appendInts(meta, off, 1 + meta[off] * 2);
+        prefixed[to] = src.prefixed[from];
+        long tref = src.textRef[from];
+        int len = src.textLen[from];
+        textLen[to] = len;
+        textRef[to] = appendBytes(src.textPages[page(tref)], offset(tref), len);
+    }
+
+    /** 文本页与元数据页占用的字节数 */
+    long bytesUsed() {
+        long bytes = 0;
+        for (byte[] p : textPages) bytes += p.length;
+        for (int[] p : metaPages) bytes += (long) p.length * Integer.BYTES;
+        return bytes;
+    }
+
+    private long appendBytes(byte[] src, int from, int length) {
+        if (length > TEXT_PAGE_BYTES) {
+            // 超大文本单独成页
+            textPages = appendPage(textPages, Arrays.copyOfRange(src, from, from + length));
+            textPos = TEXT_PAGE_BYTES;
+            return ref(textPages.length - 1, 0);
+        }
+        if (textPos + length > TEXT_PAGE_BYTES) {
+            textPages = appendPage(textPages, new byte[TEXT_PAGE_BYTES]);
+            textPos = 0;
+        }
+        int pageIndex = textPages.length - 1;
+        System.arraycopy(src, from, textPages[pageIndex], textPos, length);
+        long ref = ref(pageIndex, textPos);
+        textPos += length;
+        return ref;
+    }
+
+    private long appendInts(int[] src, int from, int length) {
+        if (metaPos + length > META_PAGE_INTS) {
+            metaPages = appendPage(metaPages, new int[Math.max(META_PAGE_INTS, length)]);
+            metaPos = 0;
+        }
+        int pageIndex = metaPages.length - 1;
+        System.arraycopy(src, from, metaPages[pageIndex], metaPos, length);
+        long ref = ref(pageIndex, metaPos);
+        metaPos += length;
+        return ref;
+    }
+
+    /** 页数组按页追加复制，页本身较大，复制页指针的开销可以忽略 */
+    private static <T> T[] appendPage(T[] pages, T page) {
+        T[] next = Arrays.copyOf(pages, pages.length + 1);
+        next[pages.length] = page;
+        return next;
+    }
+
+    private static String valueOf(Map<String, Object> meta, String key) {
+        Object v = meta.get(key);
+        return v != null ? v.toString() : "";
+    }
+
+    /** 与 RagService 分块时写入的前缀一致 */
+    private static String prefixOf(String company, String department) {
+        return "公司: " + company + "\n部门: " + department + "\n";
+    }
+
+    /** 只追加的字符串字典：写方追加后整体发布数组，读方按编号无锁读取 */
+    private static final class Dictionary {
+        private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+        private volatile String[] entries = new String[16];
+        private int size;
+
+        int intern(String s) {
+            Integer id = ids.get(s);
+            if (id != null) return id;
+            String[] next = size == entries.length ? Arrays.copyOf(entries, size * 2) : entries;
+            next[size] = s;
+            entries = next;
+            ids.put(s, size);
+            return size++;
+        }
+
+        Integer id(String s) {
+            return ids.get(s);
+        }
+
+        String get(int id) {
+            return entries[id];
+        }
+    }
+
+    private static long ref(int page, int offset) {
+        return ((long) page << 32) | offset;
+    }
+
+    private static int page(long ref) {
+        return (int) (ref >>> 32);
+    }
+
+    private static int offset(long ref) {
+        return (int) ref;
+    }
+}
@@ -0,0 +1,64 @@
+package com.interview.assistant.config;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * 面经关键词分析器，索引与查询共用，保证两侧切出的词项一致：
+ * <ul>
+ *   <li>英文/数字：按连续字母数字切词并转小写，长度 ≥ 2；紧随其后的 + / # 并入词项（c++、c#、b+）</li>
+ *   <li>中文：连续汉字切成相邻二元组（"持久化" → 持久、久化），孤立单字保留为一元词</li>
+ *   <li>其余字符视为分隔符</li>
+ * </ul>
+ * 单次线性扫描、不使用正则，只为每个词项分配一个 String。
+ */
+public final class TextAnalyzer {
+
+    private TextAnalyzer() {
+    }
+
+    public static void analyze(String text, Consumer<String> sink) {
+        if (text == null || text.isEmpty()) return;
+        int n = text.length();
+        int i = 0;
+        while (i < n) {
+            char c = text.charAt(i);
+            if (Character.isIdeographic(c)) {
+                int start = i;
+                while (i < n && Character.isIdeographic(text.charAt(i))) i++;
+                if (i - start == 1) {
+                    sink.accept(String.valueOf(c));
+                } else {
+                    for (int j = start; j + 1 < i; j++) {
+                        sink.accept(text.substring(j, j + 2));
+                    }
+                }
+            } else if (Character.isLetterOrDigit(c)) {
+                int start = i;
+                while (i < n && Character.isLetterOrDigit(text.charAt(i)) && !Character.isIdeographic(text.charAt(i))) i++;
+                int end = i;
+                while (end < n && (text.charAt(end) == '+' || text.charAt(end) == '#')) end++;
+                if (end - start >= 2) sink.accept(text.substring(start, end).toLowerCase());
+                i = end;
+            } else {
+                i++;
+            }
+        }
+    }
+
+    /** 切词结果（含重复） */
+    public static List<String> terms(String text) {
+        List<String> out = new ArrayList<>();
+        analyze(text, out::add);
+        return out;
+    }
+
+    /** 去重后的查询词项，保持出现顺序 */
+    public static List<String> queryTerms(String query) {
+        LinkedHashSet<String> out = new LinkedHashSet<>();
+        analyze(query, out::add);
+        return new ArrayList<>(out);
+    }
+}
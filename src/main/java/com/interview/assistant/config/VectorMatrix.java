@@ -0,0 +1,458 @@
+package com.interview.assistant.config;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.function.IntFunction;
+
+/**
+ * 定长维度的向量矩阵：第 row 行存放一条已归一化向量，检索时只需做点积。
+ * 向量库使用 {@link #segmented} 按固定行数分段，每段为一个连续块：堆内段为 float[]，
+ * 堆外段为 DirectByteBuffer（不占 Java 堆、不参与 GC 扫描），INT8 量化段每维 1 字节 + 每行 scale/offset，约为 float 的 1/4。
+ * <p>
+ * 单写多读：写方只写入尚未发布的新行、扩容时整体替换段数组，已写入的行不再改动，检索线程可无锁读取已发布的行。
+ */
+abstract class VectorMatrix {
+
+    protected final int dim;
+    protected final int capacity;
+
+    VectorMatrix(int dim, int capacity) {
+        this.dim = dim;
+        this.capacity = capacity;
+    }
+
+    static VectorMatrix create(InterviewEmbeddingStore.Storage storage, int dim, int capacity) {
+        return storage == InterviewEmbeddingStore.Storage.OFF_HEAP ? new OffHeap(dim, capacity) : new Heap(dim, capacity);
+    }
+
+    /**
+     * INT8 量化时 keepExact 为 true 会在 storage 指定的位置额外保留一份 float 原向量，供 top 候选精排；
+     * 为 false 时只存量化码（内存最省，分数为近似值）。
+     */
+    static VectorMatrix create(InterviewEmbeddingStore.Storage storage, InterviewEmbeddingStore.Quantization quantization,
+                               boolean keepExact, int dim, int capacity) {
+        if (quantization != InterviewEmbeddingStore.Quantization.INT8) return create(storage, dim, capacity);
+        return new Int8(dim, capacity, keepExact ? create(storage, dim, capacity) : null);
+    }
+
+    int dimension() {
+        return dim;
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    /**
+     * 分段矩阵：按 segmentRows 行一段，每段由 factory 创建（堆内 / 堆外 / INT8 均可）。
+     * 扩容只追加新段，已有行不搬移；也不再受单个数组 / ByteBuffer 的 2GB 上限约束。
+     */
+    static VectorMatrix segmented(int dim, int capacity, int segmentRows, IntFunction<VectorMatrix> factory) {
+        return new Segmented(dim, capacity, segmentRows, factory);
+    }
+
+    /** 写入第 row 行（调用方保证 vector 已归一化且长度等于 dim） */
+    abstract void set(int row, float[] vector);
+
+    /** 第 row 行与查询向量的点积；两者均已归一化时即余弦相似度 */
+    abstract float dot(int row, float[] query);
+
+    /** 连续 count 行（从 startRow 起）与查询向量的点积写入 out[0..count) */
+    void dotBlock(int startRow, int count, float[] query, float[] out) {
+        for (int i = 0; i < count; i++) {
+            out[i] = dot(startRow + i, query);
+        }
+    }
+
+    /** 分数是否为量化近似值 */
+    boolean approximate() {
+        return false;
+    }
+
+    /** 精排用的点积：量化矩阵保留了原向量时按原向量计算，否则同 {@link #dot} */
+    float exactDot(int row, float[] query) {
+        return dot(row, query);
+    }
+
+    /** 将第 row 行拷贝到 dst */
+    abstract void get(int row, float[] dst);
+
+    /** 从 src 当前位置起批量读入 rows 行到 startRow 开始的位置（用于快照加载），读取后 src 位置前移 */
+    abstract void loadRows(int startRow, FloatBuffer src, int rows);
+
+    /** 把第 from 行原样拷贝到同类矩阵 dst 的第 to 行（跨段搬移）；默认取出向量后写入 */
+    void copyRowTo(int from, VectorMatrix dst, int to) {
+        float[] buf = new float[dim];
+        get(from, buf);
+        dst.set(to, buf);
+    }
+
+    /** 扩容：返回容量为 newCapacity 的新矩阵，前 rows 行已拷贝 */
+    abstract VectorMatrix grow(int newCapacity, int rows);
+
+    float[] row(int row) {
+        float[] out = new float[dim];
+        get(row, out);
+        return out;
+    }
+
+    /** 原地 L2 归一化，零向量保持不变 */
+    static float[] normalize(float[] v) {
+        double sum = 0;
+        for (float x : v) sum += x * x;
+        if (sum == 0) return v;
+        float inv = (float) (1.0 / Math.sqrt(sum));
+        for (int i = 0; i < v.length; i++) v[i] *= inv;
+        return v;
+    }
+
+    private static final class Heap extends VectorMatrix {
+        private final float[] data;
+
+        Heap(int dim, int capacity) {
+            super(dim, capacity);
+            long len = (long) dim * capacity;
+            if (len > Integer.MAX_VALUE - 8) {
+                throw new IllegalStateException("向量矩阵超出单数组上限: " + capacity + " x " + dim);
+            }
+            this.data = new float[(int) len];
+        }
+
+        @Override
+        void set(int row, float[] vector) {
+            System.arraycopy(vector, 0, data, row * dim, dim);
+        }
+
+        @Override
+        float dot(int row, float[] query) {
+            int base = row * dim;
+            float s = 0;
+            for (int i = 0; i < dim; i++) {
+                s += data[base + i] * query[i];
+            }
+            return s;
+        }
+
+        @Override
+        void dotBlock(int startRow, int count, float[] query, float[] out) {
+            int base = startRow * dim;
+            for (int r = 0; r < count; r++, base += dim) {
+                float s = 0;
+                for (int i = 0; i < dim; i++) {
+                    s += data[base + i] * query[i];
+                }
+                out[r] = s;
+            }
+        }
+
+        @Override
+        void get(int row, float[] dst) {
+            System.arraycopy(data, row * dim, dst, 0, dim);
+        }
+
+        @Override
+        void loadRows(int startRow, FloatBuffer src, int rows) {
+            src.get(data, startRow * dim, rows * dim);
+        }
+
+        @Override
+        VectorMatrix grow(int newCapacity, int rows) {
+            Heap next = new Heap(dim, newCapacity);
+            System.arraycopy(data, 0, next.data, 0, rows * dim);
+            return next;
+        }
+    }
+
+    private static final class OffHeap extends VectorMatrix {
+        private final FloatBuffer data;
+
+        OffHeap(int dim, int capacity) {
+            super(dim, capacity);
+            long bytes = (long) dim * capacity * Float.BYTES;
+            if (bytes > Integer.MAX_VALUE) {
+                throw new IllegalStateException("堆外向量矩阵超出单个 ByteBuffer 上限: " + capacity + " x " + dim);
+            }
+            this.data = ByteBuffer.allocateDirect((int) bytes).order(ByteOrder.nativeOrder()).asFloatBuffer();
+        }
+
+        @Override
+        void set(int row, float[] vector) {
+            data.put(row * dim, vector, 0, dim);
+        }
+
+        @Override
+        float dot(int row, float[] query) {
+            int base = row * dim;
+            float s = 0;
+            for (int i = 0; i < dim; i++) {
+                s += data.get(base + i) * query[i];
+            }
+            return s;
+        }
+
+        @Override
+        void get(int row, float[] dst) {
+            data.get(row * dim, dst, 0, dim);
+        }
+
+        @Override
+        void loadRows(int startRow, FloatBuffer src, int rows) {
+            int len = rows * dim;
+            data.put(startRow * dim, src, src.position(), len);
+            src.position(src.position() + len);
+        }
+
+        @Override
+        VectorMatrix grow(int newCapacity, int rows) {
+            OffHeap next = new OffHeap(dim, newCapacity);
+            next.data.put(0, data, 0, rows * dim);
+            return next;
+        }
+    }
+
+    /**
+     * 每行非对称量化：x ≈ scale * (code + 128) + offset，offset 为该行最小值，scale = (max - min) / 255。
+     * 批量扫描时查询向量再做一次对称量化（q ≈ qScale * qc），打分化为整数点积 Σ code·qc：
+     * dot ≈ qScale * (scale * (Σ code·qc + 128·Σqc) + offset·Σqc)。
+     * 量化码始终放在堆内 byte[]；exact 非 null 时同时保留原向量用于精排与导出。
+     */
+    private static final class Int8 extends VectorMatrix {
+        private final byte[] codes;
+        private final float[] scales;
+        private final float[] offsets;
+        private final VectorMatrix exact;
+
+        Int8(int dim, int capacity, VectorMatrix exact) {
+            super(dim, capacity);
+            long len = (long) dim * capacity;
+            if (len > Integer.MAX_VALUE - 8) {
+                throw new IllegalStateException("量化向量矩阵超出单数组上限: " + capacity + " x " + dim);
+            }
+            this.codes = new byte[(int) len];
+            this.scales = new float[capacity];
+            this.offsets = new float[capacity];
+            this.exact = exact;
+        }
+
+        @Override
+        boolean approximate() {
+            return true;
+        }
+
+        @Override
+        void set(int row, float[] vector) {
+            float min = Float.POSITIVE_INFINITY;
+            float max = Float.NEGATIVE_INFINITY;
+            for (float x : vector) {
+                if (x < min) min = x;
+                if (x > max) max = x;
+            }
+            float scale = (max - min) / 255f;
+            int base = row * dim;
+            for (int i = 0; i < dim; i++) {
+                int q = scale == 0 ? 0 : Math.round((vector[i] - min) / scale);
+                codes[base + i] = (byte) (Math.min(255, Math.max(0, q)) - 128);
+            }
+            scales[row] = scale;
+            offsets[row] = min;
+            if (exact != null) exact.set(row, vector);
+        }
+
+        /** 单行打分（HNSW、过滤扫描）：按行解码后与 float 查询做点积，比整数路径更准 */
+        @Override
+        float dot(int row, float[] query) {
+            int base = row * dim;
+            float scale = scales[row];
+            float offset = offsets[row];
+            float s = 0;
+            for (int i = 0; i < dim; i++) {
+                s += (scale * (codes[base + i] + 128) + offset) * query[i];
+            }
+            return s;
+        }
+
+        @Override
+        void dotBlock(int startRow, int count, float[] query, float[] out) {
+            // 查询向量对称量化到 [-127, 127]，每块只做一次，相对整块扫描开销可忽略
+            float qmax = 0;
+            for (float x : query) qmax = Math.max(qmax, Math.abs(x));
+            if (qmax == 0) {
+                Arrays.fill(out, 0, count, 0f);
+                return;
+            }
+            float qScale = qmax / 127f;
+            byte[] qc = QUERY_CODES.get();
+            if (qc.length < dim) {
+                qc = new byte[dim];
+                QUERY_CODES.set(qc);
+            }
+            int qsum = 0;
+            for (int i = 0; i < dim; i++) {
+                qc[i] = (byte) Math.round(query[i] / qScale);
+                qsum += qc[i];
+            }
+            int base = startRow * dim;
+            for (int r = 0; r < count; r++, base += dim) {
+                int acc = 0;
+                for (int i = 0; i < dim; i++) {
+                    acc += codes[base + i] * qc[i];
+                }
+                int row = startRow + r;
+                out[r] = qScale * (scales[row] * (acc + 128f * qsum) + offsets[row] * qsum);
+            }
+        }
+
+        @Override
+        float exactDot(int row, float[] query) {
+            return exact != null ? exact.dot(row, query) : dot(row, query);
+        }
+
+        @Override
+        void get(int row, float[] dst) {
+            if (exact != null) {
+                exact.get(row, dst);
+                return;
+            }
+            int base = row * dim;
+            for (int i = 0; i < dim; i++) {
+                dst[i] = scales[row] * (codes[base + i] + 128) + offsets[row];
+            }
+        }
+
+        @Override
+        void loadRows(int startRow, FloatBuffer src, int rows) {
+            float[] buf = new float[dim];
+            for (int r = 0; r < rows; r++) {
+                src.get(buf);
+                set(startRow + r, buf);
+            }
+        }
+
+        /** 目标同为 INT8 段时直接拷贝量化码与 scale/offset，不经解码再量化，搬移前后分数完全一致 */
+        @Override
+        void copyRowTo(int from, VectorMatrix dst, int to) {
+            if (!(dst instanceof Int8 target) || (exact == null) != (target.exact == null)) {
+                super.copyRowTo(from, dst, to);
+                return;
+            }
+            System.arraycopy(codes, from * dim, target.codes, to * dim, dim);
+            target.scales[to] = scales[from];
+            target.offsets[to] = offsets[from];
+            if (exact != null) exact.copyRowTo(from, target.exact, to);
+        }
+
+        @Override
+        VectorMatrix grow(int newCapacity, int rows) {
+            Int8 next = new Int8(dim, newCapacity, exact != null ? exact.grow(newCapacity, rows) : null);
+            System.arraycopy(codes, 0, next.codes, 0, rows * dim);
+            System.arraycopy(scales, 0, next.scales, 0, rows);
+            System.arraycopy(offsets, 0, next.offsets, 0, rows);
+            return next;
+        }
+
+        private static final ThreadLocal<byte[]> QUERY_CODES = ThreadLocal.withInitial(() -> new byte[0]);
+    }
+
+    private static final class Segmented extends VectorMatrix {
+        private final int segmentRows;
+        private final IntFunction<VectorMatrix> factory;
+        /** 扩容时复制后整体替换，检索线程读到的段数组总是完整的 */
+        private volatile VectorMatrix[] segments = new VectorMatrix[0];
+
+        Segmented(int dim, int capacity, int segmentRows, IntFunction<VectorMatrix> factory) {
+            super(dim, 0);
+            this.segmentRows = segmentRows;
+            this.factory = factory;
+            ensure(Math.max(1, capacity));
+        }
+
+        private void ensure(int rows) {
+            VectorMatrix[] current = segments;
+            int needed = (int) ((rows + (long) segmentRows - 1) / segmentRows);
+            if (current.length >= needed) return;
+            VectorMatrix[] next = Arrays.copyOf(current, needed);
+            for (int i = current.length; i < needed; i++) {
+                next[i] = factory.apply(segmentRows);
+            }
+            segments = next;
+        }
+
+        private VectorMatrix seg(int row) {
+            return segments[row / segmentRows];
+        }
+
+        @Override
+        int capacity() {
+            return segments.length * segmentRows;
+        }
+
+        @Override
+        boolean approximate() {
+            return segments[0].approximate();
+        }
+
+        @Override
+        void set(int row, float[] vector) {
+            seg(row).set(row % segmentRows, vector);
+        }
+
+        @Override
+        float dot(int row, float[] query) {
+            return seg(row).dot(row % segmentRows, query);
+        }
+
+        @Override
+        float exactDot(int row, float[] query) {
+            return seg(row).exactDot(row % segmentRows, query);
+        }
+
+        /** 块落在同一段内时整块交给该段；跨段的块（段行数不是块大小整数倍时才会出现）逐行打分 */
+        @Override
+        void dotBlock(int startRow, int count, float[] query, float[] out) {
+            int offset = startRow % segmentRows;
+            if (offset + count <= segmentRows) {
+                seg(startRow).dotBlock(offset, count, query, out);
+                return;
+            }
+            for (int i = 0; i < count; i++) {
+                out[i] = dot(startRow + i, query);
+            }
+        }
+
+        @Override
+        void get(int row, float[] dst) {
+            seg(row).get(row % segmentRows, dst);
+        }
+
+        @Override
+        void loadRows(int startRow, FloatBuffer src, int rows) {
+            ensure(startRow + rows);
+            int done = 0;
+            while (done < rows) {
+                int row = startRow + done;
+                int n = Math.min(rows - done, segmentRows - row % segmentRows);
+                seg(row).loadRows(row % segmentRows, src, n);
+                done += n;
+            }
+        }
+
+        /** 目标同为分段矩阵时交给对应的段，INT8 段之间直接拷贝量化码 */
+        @Override
+        void copyRowTo(int from, VectorMatrix dst, int to) {
+            if (dst instanceof Segmented target) {
+                seg(from).copyRowTo(from % segmentRows, target.seg(to), to % segmentRows);
+                return;
+            }
+            super.copyRowTo(from, dst, to);
+        }
+
+        /** 原地追加新段，返回自身 */
+        @Override
+        VectorMatrix grow(int newCapacity, int rows) {
+            ensure(newCapacity);
+            return this;
+        }
+    }
+}
@@ -43,6 +43,10 @@ public class ZhipuEmbeddingModel implements EmbeddingModel {
                 .build();
     }
 
+    public String modelName() {
+        return model;
+    }
+
     @Override
     public Response<Embedding> embed(String text) {
         List<Embedding> list = embedStrings(List.of(text));
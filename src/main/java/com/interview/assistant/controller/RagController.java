@@ -0,0 +1,72 @@
+package com.interview.assistant.controller;
+
+import com.interview.assistant.service.InterviewDataService;
+import com.interview.assistant.service.RagIndexQueue;
+import com.interview.assistant.service.RagIndexSyncService;
+import com.interview.assistant.service.RagService;
+import com.interview.assistant.service.RagShardClient;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/rag")
+@CrossOrigin
+public class RagController {
+
+    private final RagService ragService;
+    private final RagIndexQueue indexQueue;
+    private final RagIndexSyncService syncService;
+    private final InterviewDataService dataService;
+
+    public RagController(RagService ragService, RagIndexQueue indexQueue, RagIndexSyncService syncService,
+                         InterviewDataService dataService) {
+        this.ragService = ragService;
+        this.indexQueue = indexQueue;
+        this.syncService = syncService;
+        this.dataService = dataService;
+    }
+
+    /** 向量库规模与各级缓存命中情况 */
+    @GetMapping("/stats")
+    public ResponseEntity<Map<String, Object>> stats() {
+        return ResponseEntity.ok(ragService.stats());
+    }
+
+    /** 索引队列：排队 / 处理中 / 完成 / 失败数与吞吐 */
+    @GetMapping("/index/status")
+    public ResponseEntity<RagIndexQueue.Status> indexStatus() {
+        return ResponseEntity.ok(indexQueue.status());
+    }
+
+    /** 分片节点接口：协调者下发查询，只在本节点分片内检索并返回部分 top-K */
+    @PostMapping("/shard/retrieve")
+    public ResponseEntity<List<RagShardClient.ShardHit>> shardRetrieve(@RequestBody RagShardClient.ShardQuery query) {
+        return ResponseEntity.ok(ragService.retrieveShard(query));
+    }
+
+    /** 分片节点接口：其它节点接收了归属本分片的面经上传 / 删除，通知本节点立即从共享数据库同步 */
+    @PostMapping("/shard/sync")
+    public ResponseEntity<Void> shardSync(@RequestBody List<Long> experienceIds) {
+        dataService.syncOwned(experienceIds);
+        return ResponseEntity.accepted().build();
+    }
+
+    /** 触发全量重建：在影子库中重建完成后整体替换，期间检索不受影响；已有重建在执行时返回 409，无法提交时返回 503 */
+    @PostMapping("/rebuild")
+    public ResponseEntity<RagIndexSyncService.RebuildStatus> rebuild() {
+        if (!syncService.rebuildAsync()) {
+            RagIndexSyncService.RebuildStatus status = syncService.rebuildStatus();
+            return ResponseEntity.status(status.state() == RagIndexSyncService.RebuildState.FAILED ? 503 : 409).body(status);
+        }
+        return ResponseEntity.accepted().body(syncService.rebuildStatus());
+    }
+
+    /** 全量重建进度 */
+    @GetMapping("/rebuild")
+    public ResponseEntity<RagIndexSyncService.RebuildStatus> rebuildStatus() {
+        return ResponseEntity.ok(syncService.rebuildStatus());
+    }
+}
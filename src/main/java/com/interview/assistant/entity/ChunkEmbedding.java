@@ -0,0 +1,53 @@
+package com.interview.assistant.entity;
+
+import jakarta.persistence.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * 分块向量缓存：以「模型标识 + 分块文本」的 SHA-256 为主键，块文本不变时重建索引直接复用向量。
+ */
+@Entity
+@Table(name = "chunk_embeddings", indexes = {
+    @Index(name = "idx_ce_model", columnList = "modelId")
+})
+public class ChunkEmbedding {
+
+    /** SHA-256(modelId + '\0' + text) 的十六进制 */
+    @Id
+    @Column(length = 64)
+    private String contentHash;
+
+    @Column(nullable = false)
+    private String modelId;
+
+    private int dimension;
+
+    /** float32 大端序 */
+    @Lob
+    @Column(nullable = false)
+    private byte[] vector;
+
+    private LocalDateTime createdAt = LocalDateTime.now();
+
+    public ChunkEmbedding() {
+    }
+
+    public ChunkEmbedding(String contentHash, String modelId, int dimension, byte[] vector) {
+        this.contentHash = contentHash;
+        this.modelId = modelId;
+        this.dimension = dimension;
+        this.vector = vector;
+    }
+
+    public String getContentHash() { return contentHash; }
+    public void setContentHash(String contentHash) { this.contentHash = contentHash; }
+    public String getModelId() { return modelId; }
+    public void setModelId(String modelId) { this.modelId = modelId; }
+    public int getDimension() { return dimension; }
+    public void setDimension(int dimension) { this.dimension = dimension; }
+    public byte[] getVector() { return vector; }
+    public void setVector(byte[] vector) { this.vector = vector; }
+    public LocalDateTime getCreatedAt() { return createdAt; }
+    public void setCreatedAt(LocalDateTime createdAt) { this.createdAt = createdAt; }
+}
@@ -4,7 +4,11 @@ import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import com.interview.assistant.deserializer.JsonArrayOrStringDeserializer;
 import jakarta.persistence.*;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.LocalDateTime;
+import java.util.HexFormat;
 
 @Entity
 @Table(name = "interview_experiences", indexes = {
@@ -93,6 +97,31 @@ public class InterviewExperience {
 
     private LocalDateTime createdAt = LocalDateTime.now();
 
+    /** 参与 RAG 分块的字段的 SHA-256，保存时自动刷新；向量索引据此判断面经是否需要重新 Embedding */
+    @Column(length = 64)
+    private String contentHash;
+
+    @PrePersist
+    @PreUpdate
+    void refreshContentHash() {
+        this.contentHash = computeContentHash();
+    }
+
+    /** 按当前字段计算内容哈希（旧数据 contentHash 为空时也用它补算） */
+    public String computeContentHash() {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            for (String field : new String[]{company, department, position, content, internshipExperiences,
+                    projectExperiences, projectExperience, baguQuestions, llmQuestions, algorithmQuestions, algorithmLink}) {
+                if (field != null) md.update(field.getBytes(StandardCharsets.UTF_8));
+                md.update((byte) 0);
+            }
+            return HexFormat.of().formatHex(md.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
     public Long getId() { return id; }
     public void setId(Long id) { this.id = id; }
     public String getSource() { return source; }
@@ -131,4 +160,6 @@ public class InterviewExperience {
     public void setAlgorithmQuestions(String algorithmQuestions) { this.algorithmQuestions = algorithmQuestions; }
     public LocalDateTime getCreatedAt() { return createdAt; }
     public void setCreatedAt(LocalDateTime createdAt) { this.createdAt = createdAt; }
+    public String getContentHash() { return contentHash; }
+    public void setContentHash(String contentHash) { this.contentHash = contentHash; }
 }
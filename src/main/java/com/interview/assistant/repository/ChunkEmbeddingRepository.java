@@ -0,0 +1,16 @@
+package com.interview.assistant.repository;
+
+import com.interview.assistant.entity.ChunkEmbedding;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.transaction.annotation.Transactional;
+
+public interface ChunkEmbeddingRepository extends JpaRepository<ChunkEmbedding, String> {
+
+    /** 清理其它模型产生的缓存（切换 Embedding 模型后旧向量不再可用） */
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM ChunkEmbedding c WHERE c.modelId <> :modelId")
+    int deleteByModelIdNot(String modelId);
+}
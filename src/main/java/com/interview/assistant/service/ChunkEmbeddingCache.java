@@ -0,0 +1,122 @@
+package com.interview.assistant.service;
+
+import com.interview.assistant.entity.ChunkEmbedding;
+import com.interview.assistant.repository.ChunkEmbeddingRepository;
+import dev.langchain4j.data.embedding.Embedding;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 分块向量的内容寻址缓存（持久化在 H2 的 chunk_embeddings 表）：
+ * 重建索引 / 重复保存面经时，文本未变的块直接取回向量，只有新增或改动的块才调用 Embedding 模型。
+ * 缓存读写失败只记日志，退化为直接调用模型。
+ */
+@Component
+public class ChunkEmbeddingCache {
+
+    private static final Logger log = LoggerFactory.getLogger(ChunkEmbeddingCache.class);
+
+    /** 缓存命中统计 */
+    public record Stats(long hits, long misses) {}
+
+    private final ChunkEmbeddingRepository repository;
+    private final boolean enabled;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public ChunkEmbeddingCache(ChunkEmbeddingRepository repository,
+                               @Value("${app.rag.chunk-cache.enabled:true}") boolean enabled) {
+        this.repository = repository;
+        this.enabled = enabled && repository != null;
+    }
+
+    /** 不落库的空缓存（测试或未启用 JPA 时） */
+    public static ChunkEmbeddingCache disabled() {
+        return new ChunkEmbeddingCache(null, false);
+    }
+
+    /** 批量查缓存：返回 文本 → 向量，只含命中项 */
+    public Map<String, Embedding> getAll(String modelId, Collection<String> texts) {
+        if (!enabled || texts.isEmpty()) {
+            misses.addAndGet(texts.size());
+            return Map.of();
+        }
+        Map<String, String> hashToText = new HashMap<>();
+        for (String t : texts) hashToText.put(hash(modelId, t), t);
+        Map<String, Embedding> out = new HashMap<>();
+        try {
+            for (ChunkEmbedding ce : repository.findAllById(hashToText.keySet())) {
+                if (!modelId.equals(ce.getModelId())) continue;
+                out.put(hashToText.get(ce.getContentHash()), new Embedding(decode(ce.getVector(), ce.getDimension())));
+            }
+        } catch (Exception e) {
+            log.warn("分块向量缓存读取失败: {}", e.getMessage());
+        }
+        hits.addAndGet(out.size());
+        misses.addAndGet(hashToText.size() - out.size());
+        return out;
+    }
+
+    /** 写入新算出的向量 */
+    public void putAll(String modelId, Map<String, Embedding> embeddings) {
+        if (!enabled || embeddings.isEmpty()) return;
+        List<ChunkEmbedding> rows = new ArrayList<>(embeddings.size());
+        for (Map.Entry<String, Embedding> e : embeddings.entrySet()) {
+            float[] v = e.getValue().vector();
+            rows.add(new ChunkEmbedding(hash(modelId, e.getKey()), modelId, v.length, encode(v)));
+        }
+        try {
+            repository.saveAll(rows);
+        } catch (Exception e) {
+            log.warn("分块向量缓存写入失败: {}", e.getMessage());
+        }
+    }
+
+    /** 删除其它模型的缓存，返回删除条数 */
+    public int evictOtherModels(String modelId) {
+        if (!enabled) return 0;
+        try {
+            return repository.deleteByModelIdNot(modelId);
+        } catch (Exception e) {
+            log.warn("分块向量缓存清理失败: {}", e.getMessage());
+            return 0;
+        }
+    }
+
+    public Stats stats() {
+        return new Stats(hits.get(), misses.get());
+    }
+
+    static String hash(String modelId, String text) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            md.update(modelId.getBytes(StandardCharsets.UTF_8));
+            md.update((byte) 0);
+            md.update(text.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(md.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] encode(float[] v) {
+        ByteBuffer buf = ByteBuffer.allocate(v.length * Float.BYTES);
+        buf.asFloatBuffer().put(v);
+        return buf.array();
+    }
+
+    private static float[] decode(byte[] bytes, int dim) {
+        float[] v = new float[dim];
+        ByteBuffer.wrap(bytes).asFloatBuffer().get(v);
+        return v;
+    }
+}
@@ -5,28 +5,37 @@ import com.interview.assistant.repository.InterviewExperienceRepository;
 import com.interview.assistant.capability.ExperienceCleaningCapability;
 import org.springframework.stereotype.Service;
 
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 @Service
 public class InterviewDataService {
 
     private final InterviewExperienceRepository repository;
     private final RagService ragService;
+    private final RagIndexQueue indexQueue;
+    private final RagShardClient shards;
     private final ExperienceCleaningCapability experienceCleaningCapability;
 
     public InterviewDataService(InterviewExperienceRepository repository,
                                 RagService ragService,
+                                RagIndexQueue indexQueue,
+                                RagShardClient shards,
                                 ExperienceCleaningCapability experienceCleaningCapability) {
         this.repository = repository;
         this.ragService = ragService;
+        this.indexQueue = indexQueue;
+        this.shards = shards;
         this.experienceCleaningCapability = experienceCleaningCapability;
     }
 
-    /** 保存后异步做 RAG 索引，与 saveAll 一致，避免单条保存被 Embedding 调用拖慢 1～3 秒 */
+    /** 保存后投递到 RAG 索引队列，与 saveAll 一致，避免单条保存被 Embedding 调用拖慢 1～3 秒 */
     public InterviewExperience save(InterviewExperience exp) {
         exp = experienceCleaningCapability.cleanExperience(exp);
         exp = repository.save(exp);
-        ragService.indexExperiencesAsync(List.of(exp));
+        index(List.of(exp));
         return exp;
     }
 
@@ -35,11 +44,29 @@ public class InterviewDataService {
                 .map(experienceCleaningCapability::cleanExperience)
                 .toList();
         experiences = repository.saveAll(experiences);
-        // 异步做 RAG 索引，避免上传时 AllMiniLM 首次加载/批量 embedding 导致超时 502
-        ragService.indexExperiencesAsync(experiences);
+        // 投递到 RAG 索引队列，避免上传时 AllMiniLM 首次加载/批量 embedding 导致超时 502；队列满时在此阻塞形成背压
+        index(experiences);
         return experiences;
     }
 
+    /** 本节点分片内的面经进入索引队列，其余通知归属分片立即同步 */
+    private void index(List<InterviewExperience> experiences) {
+        indexQueue.submit(experiences.stream().filter(e -> ragService.ownsExperience(e.getId())).toList());
+        shards.notifyOwners(experiences.stream().map(InterviewExperience::getId).toList());
+    }
+
+    /**
+     * 分片节点收到其它节点的通知后，按数据库现状同步本分片的这些面经：仍存在的进入索引队列，已删除的从向量库移除。
+     */
+    public void syncOwned(Collection<Long> experienceIds) {
+        List<Long> owned = experienceIds.stream().filter(ragService::ownsExperience).toList();
+        List<InterviewExperience> found = repository.findAllById(owned);
+        Set<Long> missing = new HashSet<>(owned);
+        found.forEach(e -> missing.remove(e.getId()));
+        if (!found.isEmpty()) indexQueue.submit(found);
+        if (!missing.isEmpty()) ragService.removeExperiences(missing);
+    }
+
     public List<InterviewExperience> searchByCompany(String company) {
         return repository.findByCompany(company);
     }
@@ -65,5 +92,7 @@ public class InterviewDataService {
 
     public void deleteById(Long id) {
         repository.deleteById(id);
+        ragService.removeExperiences(List.of(id));
+        shards.notifyOwners(List.of(id));
     }
 }
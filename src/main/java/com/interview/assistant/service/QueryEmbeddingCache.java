@@ -0,0 +1,151 @@
+package com.interview.assistant.service;
+
+import dev.langchain4j.data.embedding.Embedding;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * 查询向量缓存：key 为 模型标识 + 规范化后的查询文本，LRU 淘汰 + TTL 过期。
+ * <p>
+ * 同一 key 的并发未命中只会有一个线程调用上游 Embedding（single-flight），其余线程等待同一结果，
+ * 避免教练场景下 answer / followups / evaluate 对同一问题各打一次 Embedding 接口。
+ */
+@Component
+public class QueryEmbeddingCache {
+
+    /** 缓存命中统计 */
+    public record Stats(long hits, long misses, long coalesced, int size) {
+        public double hitRate() {
+            long total = hits + misses + coalesced;
+            return total == 0 ? 0 : (double) (hits + coalesced) / total;
+        }
+    }
+
+    private record Entry(Embedding embedding, long expireAt) {}
+
+    private final int maxSize;
+    private final long ttlNanos;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private final ConcurrentHashMap<String, CompletableFuture<Embedding>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    public QueryEmbeddingCache(@Value("${app.rag.query-cache.max-size:2048}") int maxSize,
+                               @Value("${app.rag.query-cache.ttl-seconds:1800}") long ttlSeconds) {
+        this.maxSize = maxSize;
+        this.ttlNanos = Math.max(1, ttlSeconds) * 1_000_000_000L;
+    }
+
+    /** 取查询向量，未命中时以规范化后的文本调用 loader；maxSize ≤ 0 时不缓存 */
+    public Embedding get(String modelId, String query, Function<String, Embedding> loader) {
+        String text = normalize(query);
+        if (maxSize <= 0) {
+            misses.incrementAndGet();
+            return loader.apply(text);
+        }
+        String key = modelId + '\n' + text;
+        Embedding cached = lookup(key);
+        if (cached != null) {
+            hits.incrementAndGet();
+            return cached;
+        }
+        CompletableFuture<Embedding> mine = new CompletableFuture<>();
+        CompletableFuture<Embedding> running = inFlight.putIfAbsent(key, mine);
+        if (running != null) {
+            coalesced.incrementAndGet();
+            return await(running);
+        }
+        try {
+            // 抢到 loader 前可能刚有线程完成加载并移出 inFlight，再查一次
+            Embedding loaded = lookup(key);
+            if (loaded != null) {
+                hits.incrementAndGet();
+            } else {
+                misses.incrementAndGet();
+                loaded = loader.apply(text);
+                store(key, loaded);
+            }
+            mine.complete(loaded);
+            return loaded;
+        } catch (RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+    public Stats stats() {
+        int size;
+        synchronized (entries) {
+            size = entries.size();
+        }
+        return new Stats(hits.get(), misses.get(), coalesced.get(), size);
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    /** 去首尾空白并把连续空白折叠为一个空格 */
+    static String normalize(String query) {
+        if (query == null) return "";
+        StringBuilder sb = new StringBuilder(query.length());
+        boolean space = false;
+        for (int i = 0; i < query.length(); i++) {
+            char c = query.charAt(i);
+            if (Character.isWhitespace(c)) {
+                space = sb.length() > 0;
+            } else {
+                if (space) sb.append(' ');
+                sb.append(c);
+                space = false;
+            }
+        }
+        return sb.toString();
+    }
+
+    private Embedding lookup(String key) {
+        synchronized (entries) {
+            Entry e = entries.get(key);
+            if (e == null) return null;
+            if (System.nanoTime() - e.expireAt() > 0) {
+                entries.remove(key);
+                return null;
+            }
+            return e.embedding();
+        }
+    }
+
+    private void store(String key, Embedding embedding) {
+        synchronized (entries) {
+            entries.put(key, new Entry(embedding, System.nanoTime() + ttlNanos));
+            Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+            while (entries.size() > maxSize && it.hasNext()) {
+                it.next();
+                it.remove();
+            }
+        }
+    }
+
+    private static Embedding await(CompletableFuture<Embedding> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException re) throw re;
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package com.interview.assistant.service;
+
+import com.interview.assistant.entity.InterviewExperience;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * RAG 索引任务队列：有界队列 + 专用批处理 worker，与通用 @Async 线程池隔离。
+ * <p>
+ * 入队时队列满则阻塞调用方（背压），超过 offer-timeout 才拒绝；worker 按 batch-size 攒批调用
+ * {@link RagService#indexExperiences}，整批失败时逐条按指数退避重试，单条坏数据不拖累同批其它面经。
+ * 向量快照不在上传路径上写，由定期增量同步与关闭钩子保存。
+ */
+@Component
+public class RagIndexQueue {
+
+    private static final Logger log = LoggerFactory.getLogger(RagIndexQueue.class);
+
+    /** 队列状态，供 /api/rag/index/status 展示 */
+    public record Status(int queued, int inFlight, long done, long failed, long retries,
+                         double throughputPerSec, String lastError) {}
+
+    private final RagService ragService;
+    private final BlockingQueue<InterviewExperience> queue;
+    private final int batchSize;
+    private final int maxRetries;
+    private final long backoffMillis;
+    private final long offerTimeoutMillis;
+    private final ExecutorService workers;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong done = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    /** 已入队但尚未处理完的面经数（含排队与处理中），入队前即计入，isIdle 不会在出队与计入处理中之间误判 */
+    private final AtomicInteger pending = new AtomicInteger();
+    /** 至少一个 worker 在处理的墙钟时间，多 worker 并行时不重复累计 */
+    private int activeWorkers;
+    private long activeSince;
+    private long busyNanos;
+    private volatile String lastError;
+    private volatile boolean running = true;
+
+    public RagIndexQueue(RagService ragService,
+                         @Value("${app.rag.queue.capacity:1000}") int capacity,
+                         @Value("${app.rag.queue.workers:1}") int workerCount,
+                         @Value("${app.rag.queue.batch-size:16}") int batchSize,
+                         @Value("${app.rag.queue.max-retries:3}") int maxRetries,
+                         @Value("${app.rag.queue.backoff:PT1S}") Duration backoff,
+                         @Value("${app.rag.queue.offer-timeout:PT30S}") Duration offerTimeout) {
+        this.ragService = ragService;
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, capacity));
+        this.batchSize = Math.max(1, batchSize);
+        this.maxRetries = Math.max(0, maxRetries);
+        this.backoffMillis = backoff.toMillis();
+        this.offerTimeoutMillis = offerTimeout.toMillis();
+        int n = Math.max(1, workerCount);
+        AtomicInteger seq = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(n, r -> {
+            Thread t = new Thread(r, "rag-index-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        for (int i = 0; i < n; i++) {
+            workers.execute(this::workLoop);
+        }
+    }
+
+    /**
+     * 逐条入队；队列满时阻塞等待 worker 消费，等待超过 offer-timeout 抛 IllegalStateException，
+     * 已入队的部分仍会被索引。
+     */
+    public void submit(List<InterviewExperience> experiences) {
+        for (InterviewExperience exp : experiences) {
+            pending.incrementAndGet();
+            boolean queued = false;
+            try {
+                queued = queue.offer(exp, offerTimeoutMillis, TimeUnit.MILLISECONDS);
+                if (!queued) throw new IllegalStateException("RAG 索引队列已满，请稍后重试");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("RAG 索引入队被中断", e);
+            } finally {
+                if (!queued) pending.decrementAndGet();
+            }
+        }
+    }
+
+    public Status status() {
+        long d = done.get();
+        long busy;
+        synchronized (this) {
+            busy = busyNanos + (activeWorkers > 0 ? System.nanoTime() - activeSince : 0);
+        }
+        double throughput = busy == 0 ? 0 : d * 1_000_000_000.0 / busy;
+        return new Status(queue.size(), inFlight.get(), d, failed.get(), retries.get(), throughput, lastError);
+    }
+
+    /** 队列为空且没有正在处理的批次 */
+    public boolean isIdle() {
+        return pending.get() == 0;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        workers.shutdownNow();
+    }
+
+    private void workLoop() {
+        List<InterviewExperience> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                InterviewExperience first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) continue;
+                inFlight.incrementAndGet();
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                inFlight.addAndGet(batch.size() - 1);
+                process(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                inFlight.addAndGet(-batch.size());
+                pending.addAndGet(-batch.size());
+                batch.clear();
+            }
+        }
+    }
+
+    /** 先整批索引；失败时逐条重试，只有反复失败的那几条计入 failed */
+    private void process(List<InterviewExperience> batch) throws InterruptedException {
+        beginBusy();
+        try {
+            try {
+                ragService.indexExperiences(batch);
+                done.addAndGet(batch.size());
+                return;
+            } catch (RuntimeException e) {
+                lastError = e.getMessage();
+                if (maxRetries == 0) {
+                    failed.addAndGet(batch.size());
+                    log.error("RAG 索引失败，放弃 {} 条面经", batch.size(), e);
+                    return;
+                }
+                log.warn("RAG 批量索引失败，{} 条面经改为逐条重试: {}", batch.size(), e.getMessage());
+            }
+            for (InterviewExperience exp : batch) {
+                processOne(exp);
+            }
+        } finally {
+            endBusy();
+        }
+    }
+
+    /** 整批失败后逐条处理：先立即尝试一次，失败后才按 backoff 指数退避重试，最多 maxRetries 次 */
+    private void processOne(InterviewExperience exp) throws InterruptedException {
+        for (int retry = 0; ; retry++) {
+            try {
+                ragService.indexExperiences(List.of(exp));
+                done.incrementAndGet();
+                return;
+            } catch (RuntimeException e) {
+                lastError = e.getMessage();
+                if (retry >= maxRetries) {
+                    failed.incrementAndGet();
+                    log.error("RAG 索引失败（已重试 {} 次），放弃面经 {}", maxRetries, exp.getId(), e);
+                    return;
+                }
+                long delay = backoffMillis << retry;
+                log.warn("RAG 索引面经 {} 失败，{} ms 后第 {} 次重试: {}", exp.getId(), delay, retry + 1, e.getMessage());
+                Thread.sleep(delay);
+                retries.incrementAndGet();
+            }
+        }
+    }
+
+    private synchronized void beginBusy() {
+        if (activeWorkers++ == 0) activeSince = System.nanoTime();
+    }
+
+    private synchronized void endBusy() {
+        if (--activeWorkers == 0) busyNanos += System.nanoTime() - activeSince;
+    }
+}
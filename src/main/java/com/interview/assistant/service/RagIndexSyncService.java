@@ -0,0 +1,226 @@
+package com.interview.assistant.service;
+
+import com.interview.assistant.config.InterviewEmbeddingStore;
+import com.interview.assistant.entity.InterviewExperience;
+import com.interview.assistant.repository.InterviewExperienceRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 数据库 → 向量库增量同步：按页流式读取面经，与向量库中记录的内容版本比对，
+ * 只对新增 / 内容变化的面经重新 Embedding，并移除数据库中已删除的面经。
+ * 启动时由 DataLoader 触发一次，之后按 app.rag.sync.interval 定期执行。
+ * <p>
+ * 全量重建（蓝绿）：在同配置的影子库中从头索引，完成后原子替换当前库，期间检索仍走旧库；
+ * 替换后再做一次增量同步，补上重建期间写入旧库的增删。切换 Embedding 模型时同样走这条路径回填新模型的向量，
+ * 期间由 RagService 双读旧模型的库，可用 app.rag.rebuild.max-per-second 限速。
+ */
+@Service
+public class RagIndexSyncService {
+
+    private static final Logger log = LoggerFactory.getLogger(RagIndexSyncService.class);
+
+    /** 一次同步的结果 */
+    public record SyncReport(int scanned, int added, int changed, int removed, long elapsedMs) {}
+
+    public enum RebuildState { IDLE, RUNNING, DONE, FAILED }
+
+    /** 全量重建进度；processed 为已扫描的面经条数 */
+    public record RebuildStatus(RebuildState state, long total, long processed, int chunks,
+                                Long startedAt, Long finishedAt, String error) {}
+
+    private final InterviewExperienceRepository repository;
+    private final RagService ragService;
+
+    @Value("${app.rag.sync.page-size:200}")
+    private int pageSize = 200;
+
+    /** 全量重建（含切换模型后的回填）每秒最多处理的面经条数，0 不限速 */
+    @Value("${app.rag.rebuild.max-per-second:0}")
+    private double maxPerSecond = 0;
+
+    private final AtomicBoolean rebuilding = new AtomicBoolean();
+    private volatile RebuildStatus rebuildStatus = new RebuildStatus(RebuildState.IDLE, 0, 0, 0, null, null, null);
+
+    /** 全量重建专用的单线程执行器：重建可能持续数分钟，不占用通用 @Async 线程池 */
+    private final ExecutorService rebuildExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "rag-rebuild");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public RagIndexSyncService(InterviewExperienceRepository repository, RagService ragService) {
+        this.repository = repository;
+        this.ragService = ragService;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        rebuildExecutor.shutdownNow();
+    }
+
+    @Async
+    public void syncAsync() {
+        try {
+            sync();
+        } catch (Exception e) {
+            log.error("RAG 增量同步失败", e);
+        }
+    }
+
+    /** 定时任务本身已在调度线程上执行，直接调用 sync()（经 this 调用 syncAsync 不会走 @Async 代理） */
+    @Scheduled(initialDelayString = "${app.rag.sync.interval:PT10M}", fixedDelayString = "${app.rag.sync.interval:PT10M}")
+    public void scheduledSync() {
+        try {
+            sync();
+        } catch (Exception e) {
+            log.error("RAG 定时增量同步失败", e);
+        }
+    }
+
+    public synchronized SyncReport sync() {
+        long start = System.currentTimeMillis();
+        Map<Long, String> indexed = ragService.indexedVersions();
+        Set<Long> seen = new HashSet<>();
+        int scanned = 0;
+        int added = 0;
+        int changed = 0;
+        Pageable pageable = PageRequest.of(0, Math.max(1, pageSize), Sort.by("id"));
+        while (true) {
+            Page<InterviewExperience> page = repository.findAll(pageable);
+            List<InterviewExperience> dirty = new ArrayList<>();
+            for (InterviewExperience exp : page.getContent()) {
+                scanned++;
+                if (!ragService.ownsExperience(exp.getId())) continue;
+                seen.add(exp.getId());
+                String version = indexed.get(exp.getId());
+                if (version == null) {
+                    added++;
+                } else if (!version.equals(RagService.contentVersionOf(exp))) {
+                    changed++;
+                } else {
+                    continue;
+                }
+                dirty.add(exp);
+            }
+            if (!dirty.isEmpty()) ragService.indexExperiences(dirty);
+            if (!page.hasNext()) break;
+            pageable = page.nextPageable();
+        }
+        Set<Long> stale = new HashSet<>(indexed.keySet());
+        stale.removeAll(seen);
+        if (!stale.isEmpty()) ragService.removeExperiences(stale);
+        ragService.saveSnapshot();
+        SyncReport report = new SyncReport(scanned, added, changed, stale.size(), System.currentTimeMillis() - start);
+        if (added + changed + stale.size() > 0) {
+            log.info("RAG 增量同步: 扫描 {} 条，新增 {}，变更 {}，移除 {}，耗时 {} ms",
+                    scanned, added, changed, stale.size(), report.elapsedMs());
+        }
+        return report;
+    }
+
+    public RebuildStatus rebuildStatus() {
+        return rebuildStatus;
+    }
+
+    /** 后台启动全量重建；已有重建在执行或无法提交（执行器已关闭）时返回 false，后者记为 FAILED */
+    public boolean rebuildAsync() {
+        if (!rebuilding.compareAndSet(false, true)) return false;
+        rebuildStatus = new RebuildStatus(RebuildState.RUNNING, 0, 0, 0, System.currentTimeMillis(), null, null);
+        try {
+            rebuildExecutor.execute(() -> {
+                try {
+                    runRebuild();
+                } finally {
+                    rebuilding.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            log.warn("RAG 全量重建提交失败: {}", e.getMessage());
+            rebuildStatus = new RebuildStatus(RebuildState.FAILED, 0, 0, 0, rebuildStatus.startedAt(),
+                    System.currentTimeMillis(), "重建任务提交失败: " + e.getMessage());
+            rebuilding.set(false);
+            return false;
+        }
+        return true;
+    }
+
+    /** 在调用线程上执行全量重建 */
+    public RebuildStatus rebuild() {
+        if (!rebuilding.compareAndSet(false, true)) {
+            throw new IllegalStateException("已有 RAG 全量重建在执行");
+        }
+        try {
+            return runRebuild();
+        } finally {
+            rebuilding.set(false);
+        }
+    }
+
+    private RebuildStatus runRebuild() {
+        long start = System.currentTimeMillis();
+        long total = repository.count();
+        rebuildStatus = new RebuildStatus(RebuildState.RUNNING, total, 0, 0, start, null, null);
+        try {
+            InterviewEmbeddingStore shadow = ragService.newShadowStore();
+            long processed = 0;
+            Pageable pageable = PageRequest.of(0, Math.max(1, pageSize), Sort.by("id"));
+            while (true) {
+                Page<InterviewExperience> page = repository.findAll(pageable);
+                List<InterviewExperience> owned = page.getContent().stream()
+                        .filter(e -> ragService.ownsExperience(e.getId()))
+                        .toList();
+                if (!owned.isEmpty()) ragService.indexExperiences(shadow, owned);
+                processed += page.getNumberOfElements();
+                rebuildStatus = new RebuildStatus(RebuildState.RUNNING, total, processed, shadow.size(), start, null, null);
+                if (!page.hasNext()) break;
+                throttle(start, processed);
+                pageable = page.nextPageable();
+            }
+            ragService.swapStore(shadow);
+            sync();
+            rebuildStatus = new RebuildStatus(RebuildState.DONE, total, processed, shadow.size(),
+                    start, System.currentTimeMillis(), null);
+            log.info("RAG 全量重建完成: {} 条面经，{} 个块，耗时 {} ms",
+                    processed, shadow.size(), System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            log.error("RAG 全量重建失败，继续使用旧索引", e);
+            RebuildStatus last = rebuildStatus;
+            rebuildStatus = new RebuildStatus(RebuildState.FAILED, total, last.processed(), last.chunks(),
+                    start, System.currentTimeMillis(), e.getMessage());
+        }
+        return rebuildStatus;
+    }
+
+    /** 按已处理条数计算限速下应耗时间，进度超前时等待，避免回填打满 Embedding 配额而拖慢在线查询 */
+    private void throttle(long startMillis, long processed) {
+        if (maxPerSecond <= 0) return;
+        long ahead = (long) (processed * 1000 / maxPerSecond) - (System.currentTimeMillis() - startMillis);
+        if (ahead <= 0) return;
+        try {
+            Thread.sleep(ahead);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("RAG 全量重建被中断", e);
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package com.interview.assistant.service;
 
+import com.interview.assistant.config.EmbeddingModels;
 import com.interview.assistant.config.InterviewEmbeddingStore;
+import com.interview.assistant.config.PooledLocalEmbeddingModel;
 import com.interview.assistant.entity.InterviewExperience;
 import dev.langchain4j.data.document.Metadata;
 import dev.langchain4j.data.embedding.Embedding;
@@ -9,12 +11,19 @@ import dev.langchain4j.model.embedding.EmbeddingModel;
 import dev.langchain4j.store.embedding.EmbeddingMatch;
 import dev.langchain4j.store.embedding.EmbeddingStore;
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.scheduling.annotation.Async;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import java.util.regex.Pattern;
@@ -34,36 +43,329 @@ public class RagService {
     private static final String TYPE_BAGU_JAVA = "八股_Java";
     private static final String TYPE_BAGU_AI = "八股_AI";
     private static final String TYPE_ALGORITHM = "算法";
+    /** 结构化检索输出的类型顺序 */
+    private static final List<String> TYPE_ORDER =
+            List.of(TYPE_INTERNSHIP, TYPE_PROJECT, TYPE_BAGU_JAVA, TYPE_BAGU_AI, TYPE_ALGORITHM, TYPE_OVERVIEW);
+    /** 分块规则版本，修改 buildChunks 后递增 */
+    private static final String CHUNK_SCHEMA = "c1";
+    private static final String META_CONTENT_VERSION = "contentVersion";
+    /** 向量召回的默认候选数（结构化检索） */
+    private static final int DEFAULT_CANDIDATES = 25;
+    /** 平铺检索 search() 的候选数下限，与结构化检索分开，保持 search() 原有的召回规模 */
+    private static final int SEARCH_MIN_CANDIDATES = 20;
 
     private final EmbeddingModel embeddingModel;
-    private final EmbeddingStore<TextSegment> embeddingStore;
+    /** 当前对外服务的向量库；全量重建在影子库中完成后整体替换 */
+    private volatile EmbeddingStore<TextSegment> embeddingStore;
+    private final String modelId;
+    private final QueryEmbeddingCache queryCache;
+    private final ChunkEmbeddingCache chunkCache;
+    private final RagShardClient shards;
+    private final RetrievalResultCache resultCache;
+    private final RetrievalMetrics metrics;
+    /** 向量快照文件，null 表示不持久化 */
+    private final Path snapshotPath;
+    private long snapshotVersion = -1;
+    /** 切换 Embedding 模型期间仍参与检索的旧模型命名空间；新模型回填完成、切换后置 null */
+    private volatile Namespace legacy;
+
+    /** 向量命名空间：某个 Embedding 模型及其产出的向量库，维度由库内向量决定；release 在停用后释放该模型 */
+    private record Namespace(String modelId, EmbeddingModel model, InterviewEmbeddingStore store, Runnable release) {}
+
+    /** 索引时每批 embedAll 的最大块数 */
+    @Value("${app.rag.index.batch-size:32}")
+    private int batchSize = 32;
+
+    /** 每批累计的最大字符数，避免单次请求过大 */
+    @Value("${app.rag.index.batch-max-chars:16000}")
+    private int batchMaxChars = 16000;
+
+    /**
+     * 按面经 id 分段的索引锁：同一面经的「删除旧块 → 写入新块」与删除串行执行，
+     * 索引队列 worker 与增量同步并发处理同一面经时不会写出重复块。
+     */
+    private final ReentrantLock[] experienceLocks =
+            Stream.generate(ReentrantLock::new).limit(64).toArray(ReentrantLock[]::new);
 
     public RagService(EmbeddingModel embeddingModel, EmbeddingStore<TextSegment> embeddingStore) {
+        this(embeddingModel, embeddingStore, new QueryEmbeddingCache(256, 600), ChunkEmbeddingCache.disabled(), "",
+                RagShardClient.local(), RetrievalResultCache.disabled(), RetrievalMetrics.noop());
+    }
+
+    @Autowired
+    public RagService(EmbeddingModel embeddingModel, EmbeddingStore<TextSegment> embeddingStore,
+                      QueryEmbeddingCache queryCache, ChunkEmbeddingCache chunkCache,
+                      @Value("${app.rag.snapshot.path:./data/rag-index.snap}") String snapshotPath,
+                      RagShardClient shards, RetrievalResultCache resultCache, RetrievalMetrics metrics) {
         this.embeddingModel = embeddingModel;
         this.embeddingStore = embeddingStore;
+        this.queryCache = queryCache;
+        this.chunkCache = chunkCache;
+        this.shards = shards;
+        this.resultCache = resultCache;
+        this.metrics = metrics;
+        this.modelId = EmbeddingModels.idOf(embeddingModel);
+        this.snapshotPath = snapshotPath != null && !snapshotPath.isBlank() ? Paths.get(snapshotPath.trim()) : null;
+        metrics.gauge("rag.corpus.chunks", this, RagService::corpusSize);
+        metrics.cache("query", queryCache, c -> c.stats().hits(), c -> c.stats().misses());
+        metrics.cache("chunk", chunkCache, c -> c.stats().hits(), c -> c.stats().misses());
+        metrics.cache("result", resultCache, c -> c.stats().hits(), c -> c.stats().misses());
     }
 
     @PostConstruct
     public void init() {
-        log.info("RAG Service initialized (field-based chunk)");
+        log.info("RAG Service initialized (field-based chunk, model={})", modelId);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        saveSnapshot();
+    }
+
+    /**
+     * 启动时从本地快照恢复向量库。快照不存在、与当前 Embedding 模型不一致或读取失败时返回 false，调用方应全量索引。
+     */
+    public boolean restoreSnapshot() {
+        if (snapshotPath == null || !(embeddingStore instanceof InterviewEmbeddingStore store)) return false;
+        long start = System.currentTimeMillis();
+        try {
+            if (!store.loadSnapshot(snapshotPath, modelId)) return false;
+            synchronized (this) {
+                snapshotVersion = store.version();
+            }
+            log.info("RAG 快照恢复: {} 个块，耗时 {} ms", store.size(), System.currentTimeMillis() - start);
+            return true;
+        } catch (Exception e) {
+            log.warn("RAG 快照读取失败，将全量重建: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * 快照属于其它 Embedding 模型（如新配置了智谱 Key）时，把它作为旧命名空间挂载用于双读：
+     * 检索同时查询旧库（用旧模型算查询向量）与新库，直到新模型在后台回填完成并由 {@link #swapStore} 切换。
+     * 快照不可用、与当前模型一致或旧模型无法构造时返回 false。
+     */
+    public boolean restoreLegacySnapshot(Function<String, EmbeddingModel> modelResolver) {
+        return restoreLegacySnapshot(modelResolver, id -> {});
+    }
+
+    /** 同上；旧模型不再使用（挂载失败或切换完成）时调用 release 释放它（如本地会话池的 ONNX 会话） */
+    public boolean restoreLegacySnapshot(Function<String, EmbeddingModel> modelResolver, Consumer<String> release) {
+        if (snapshotPath == null || !(embeddingStore instanceof InterviewEmbeddingStore store)) return false;
+        long start = System.currentTimeMillis();
+        String resolved = null;
+        try {
+            String previous = InterviewEmbeddingStore.snapshotModelId(snapshotPath);
+            if (previous == null || previous.equals(modelId)) return false;
+            EmbeddingModel previousModel = modelResolver.apply(previous);
+            if (previousModel == null) {
+                log.warn("RAG 快照属于模型 {}，当前无法构造该模型，不做双读", previous);
+                return false;
+            }
+            resolved = previous;
+            InterviewEmbeddingStore legacyStore = store.emptyCopy();
+            if (!legacyStore.loadSnapshot(snapshotPath, previous)) {
+                release.accept(previous);
+                return false;
+            }
+            legacy = new Namespace(previous, previousModel, legacyStore, () -> release.accept(previous));
+            log.info("RAG 旧模型索引已挂载双读: {}（{} 维，{} 个块），耗时 {} ms",
+                    previous, legacyStore.dimension(), legacyStore.size(), System.currentTimeMillis() - start);
+            return true;
+        } catch (Exception e) {
+            log.warn("RAG 旧模型快照挂载失败，不做双读: {}", e.getMessage());
+            if (resolved != null) release.accept(resolved);
+            return false;
+        }
+    }
+
+    /** 是否处于模型切换的双读阶段 */
+    public boolean migrating() {
+        return legacy != null;
     }
 
+    /** 向量库自上次快照后有变化时写入快照；双读期间保留旧模型快照，切换后才覆盖 */
+    public synchronized void saveSnapshot() {
+        if (snapshotPath == null || legacy != null
+                || !(embeddingStore instanceof InterviewEmbeddingStore store)) return;
+        long version = store.version();
+        if (version == snapshotVersion) return;
+        try {
+            store.writeSnapshot(snapshotPath, modelId);
+            snapshotVersion = version;
+            log.info("RAG 快照已保存: {} 个块 -> {}", store.size(), snapshotPath);
+        } catch (Exception e) {
+            log.warn("RAG 快照保存失败: {}", e.getMessage());
+        }
+    }
+
+    /** 运行统计：模型、块数、查询向量缓存命中率 */
+    public Map<String, Object> stats() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("model", modelId);
+        if (embeddingStore instanceof InterviewEmbeddingStore store) {
+            out.put("dimension", store.dimension());
+            out.put("chunks", store.size());
+            out.put("indexVersion", store.version());
+            out.put("segmentBytes", store.segmentBytes());
+        }
+        QueryEmbeddingCache.Stats q = queryCache.stats();
+        out.put("queryCache", Map.of("hits", q.hits(), "misses", q.misses(), "coalesced", q.coalesced(),
+                "size", q.size(), "hitRate", q.hitRate()));
+        ChunkEmbeddingCache.Stats c = chunkCache.stats();
+        out.put("chunkCache", Map.of("hits", c.hits(), "misses", c.misses()));
+        if (embeddingModel instanceof PooledLocalEmbeddingModel pooled) {
+            PooledLocalEmbeddingModel.Stats e = pooled.stats();
+            out.put("localEmbedding", Map.of("sessions", e.sessions(), "threadsPerSession", e.threadsPerSession(),
+                    "idle", e.idle(), "calls", e.calls(), "p50Ms", e.p50Ms(), "p99Ms", e.p99Ms()));
+        }
+        RetrievalResultCache.Stats r = resultCache.stats();
+        out.put("resultCache", Map.of("hits", r.hits(), "misses", r.misses(), "stale", r.stale(),
+                "size", r.size(), "hitRate", r.hitRate()));
+        Namespace old = legacy;
+        if (old != null) {
+            out.put("migratingFrom", Map.of("model", old.modelId(), "dimension", old.store().dimension(),
+                    "chunks", old.store().size()));
+        }
+        if (shards.enabled()) out.put("shard", Map.of("index", shards.index(), "count", shards.count()));
+        return out;
+    }
+
+    private double corpusSize() {
+        return embeddingStore instanceof InterviewEmbeddingStore store ? store.size() : 0;
+    }
+
+    /** 删除其它 Embedding 模型遗留的分块向量缓存 */
+    public void pruneChunkCache() {
+        int removed = chunkCache.evictOtherModels(modelId);
+        if (removed > 0) log.info("已清理其它模型的分块向量缓存: {} 条", removed);
+    }
+
+    /** 当前向量库中已有的 experienceId */
+    public Set<Long> indexedExperienceIds() {
+        if (embeddingStore instanceof InterviewEmbeddingStore store) {
+            return store.experienceIds();
+        }
+        return Set.of();
+    }
+
+    /** 向量库中每个面经上次索引时的内容版本（随快照持久化），用于增量同步 */
+    public Map<Long, String> indexedVersions() {
+        if (embeddingStore instanceof InterviewEmbeddingStore store) {
+            return store.experienceMetadata(META_CONTENT_VERSION);
+        }
+        return Map.of();
+    }
+
+    /** 分片模式下该面经是否归本节点索引；单机模式恒为 true */
+    public boolean ownsExperience(long experienceId) {
+        return shards.owns(experienceId);
+    }
+
+    /** 面经的索引内容版本：分块规则版本 + 内容哈希；分块逻辑变化时递增 CHUNK_SCHEMA 即可触发全量重建 */
+    public static String contentVersionOf(InterviewExperience exp) {
+        String hash = exp.getContentHash() != null ? exp.getContentHash() : exp.computeContentHash();
+        return CHUNK_SCHEMA + ":" + hash;
+    }
+
+    /** 移除若干面经的所有块（如数据库中已删除的面经） */
+    public void removeExperiences(Collection<Long> experienceIds) {
+        Namespace old = legacy;
+        for (Long id : experienceIds) {
+            if (id == null) continue;
+            ReentrantLock lock = experienceLock(id);
+            lock.lock();
+            try {
+                if (embeddingStore instanceof InterviewEmbeddingStore store) store.removeByExperienceId(id);
+                if (old != null) old.store().removeByExperienceId(id);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * 批量索引：跨面经把分块攒成按块数 / 字符数封顶的批次，命中分块缓存的直接复用，
+     * 其余整批 embedAll 后一次 addAll 写入向量库。
+     */
     public void indexExperiences(List<InterviewExperience> experiences) {
+        indexExperiences(embeddingStore, experiences);
+        // 双读期间新内容只写新模型的库，旧库中的旧版本随之移除，避免双读返回过期内容
+        Namespace old = legacy;
+        if (old == null) return;
         for (InterviewExperience exp : experiences) {
-            indexExperience(exp);
+            if (exp.getId() != null) old.store().removeByExperienceId(exp.getId());
         }
     }
 
-    @Async
-    public void indexExperiencesAsync(List<InterviewExperience> experiences) {
+    /** 索引到指定向量库，全量重建时写入影子库；整批持有所涉面经的索引锁（按分段号升序加锁，避免死锁） */
+    public void indexExperiences(EmbeddingStore<TextSegment> target, List<InterviewExperience> experiences) {
+        int[] stripes = experiences.stream().map(InterviewExperience::getId).filter(Objects::nonNull)
+                .mapToInt(this::experienceStripe).distinct().sorted().toArray();
+        for (int stripe : stripes) experienceLocks[stripe].lock();
         try {
-            indexExperiences(experiences);
-            log.info("RAG 异步索引完成: {} 条", experiences.size());
-        } catch (Exception e) {
-            log.error("RAG 异步索引失败", e);
+            indexLocked(target, experiences);
+        } finally {
+            for (int i = stripes.length - 1; i >= 0; i--) experienceLocks[stripes[i]].unlock();
         }
     }
 
+    private int experienceStripe(long experienceId) {
+        return (int) Math.floorMod(experienceId, (long) experienceLocks.length);
+    }
+
+    private ReentrantLock experienceLock(long experienceId) {
+        return experienceLocks[experienceStripe(experienceId)];
+    }
+
+    private void indexLocked(EmbeddingStore<TextSegment> target, List<InterviewExperience> experiences) {
+        List<TextSegment> pending = new ArrayList<>();
+        int pendingChars = 0;
+        for (InterviewExperience exp : experiences) {
+            if (exp.getId() != null && target instanceof InterviewEmbeddingStore store) {
+                store.removeByExperienceId(exp.getId());
+            }
+            if (exp.getId() != null && !shards.owns(exp.getId())) continue;
+            for (TextSegment segment : buildSegments(exp)) {
+                if (!pending.isEmpty() && (pending.size() >= batchSize
+                        || pendingChars + segment.text().length() > batchMaxChars)) {
+                    flushBatch(target, pending);
+                    pending.clear();
+                    pendingChars = 0;
+                }
+                pending.add(segment);
+                pendingChars += segment.text().length();
+            }
+        }
+        if (!pending.isEmpty()) flushBatch(target, pending);
+    }
+
+    /** 与当前向量库同配置的空影子库，用于全量重建 */
+    public InterviewEmbeddingStore newShadowStore() {
+        if (!(embeddingStore instanceof InterviewEmbeddingStore store)) {
+            throw new IllegalStateException("当前向量库不支持全量重建: " + embeddingStore.getClass().getSimpleName());
+        }
+        return store.emptyCopy();
+    }
+
+    /** 原子替换为重建好的向量库：之后的检索与写入都走新库，旧库（含模型切换时的旧模型命名空间）由 GC 回收 */
+    public void swapStore(InterviewEmbeddingStore next) {
+        embeddingStore = next;
+        Namespace old = legacy;
+        legacy = null;
+        resultCache.clear();
+        if (old != null) {
+            log.info("RAG 已切换到模型 {}（{} 维），停止双读旧模型 {}", modelId, next.dimension(), old.modelId());
+            old.release().run();
+            pruneChunkCache();
+        }
+        synchronized (this) {
+            snapshotVersion = -1;
+        }
+        saveSnapshot();
+    }
+
     /** 全量重建前清空向量库（用于启动时 reindex） */
     public void clearAll() {
         if (embeddingStore instanceof InterviewEmbeddingStore) {
@@ -72,11 +374,12 @@ public class RagService {
     }
 
     public void indexExperience(InterviewExperience exp) {
-        if (exp.getId() != null && embeddingStore instanceof InterviewEmbeddingStore) {
-            ((InterviewEmbeddingStore) embeddingStore).removeByExperienceId(exp.getId());
-        }
-        List<ChunkMeta> chunks = buildChunks(exp);
-        for (ChunkMeta c : chunks) {
+        indexExperiences(List.of(exp));
+    }
+
+    private List<TextSegment> buildSegments(InterviewExperience exp) {
+        List<TextSegment> segments = new ArrayList<>();
+        for (ChunkMeta c : buildChunks(exp)) {
             String text = c.text;
             if (text == null || text.isBlank()) continue;
             if (text.length() > MAX_CHARS_PER_CHUNK) {
@@ -88,161 +391,251 @@ public class RagService {
             if (exp.getDepartment() != null) metaMap.put("department", exp.getDepartment());
             metaMap.put("position", exp.getPosition() != null ? exp.getPosition() : "");
             metaMap.put("type", c.type);
-            TextSegment segment = TextSegment.from(text, Metadata.from(metaMap));
-            Embedding embedding = embeddingModel.embed(text).content();
-            embeddingStore.add(embedding, segment);
+            metaMap.put(META_CONTENT_VERSION, contentVersionOf(exp));
+            segments.add(TextSegment.from(text, Metadata.from(metaMap)));
         }
+        return segments;
     }
 
-    /** 检索：按 company/department 过滤，同一 experienceId 最多取 MAX_CHUNKS_PER_EXPERIENCE 块，再取 top maxResults */
-    public List<String> search(String query, String company, String department, int maxResults) {
-        java.util.List<String> tokens = tokenize(query);
-
-        // 1) 向量召回（语义）
-        Embedding queryEmbedding = embeddingModel.embed(query).content();
-        int fetch = Math.max(maxResults * 3, 20);
-        java.util.List<EmbeddingMatch<TextSegment>> vecMatches = embeddingStore.findRelevant(queryEmbedding, fetch, 0.4);
-
-        // 2) 关键词召回（补召回，避免纯向量漏掉关键术语）
-        java.util.List<TextSegment> all;
-        if (embeddingStore instanceof InterviewEmbeddingStore) {
-            all = ((InterviewEmbeddingStore) embeddingStore).allSegments();
-        } else {
-            all = java.util.List.of();
-        }
-        java.util.List<Hit> keywordHits = new java.util.ArrayList<>();
-        if (!tokens.isEmpty() && !all.isEmpty()) {
-            for (TextSegment seg : all) {
-                double ks = keywordScore(tokens, seg);
-                if (ks <= 0) continue;
-                // 基础分 + 关键词命中分：让 keyword-only 也能参与候选池
-                double score = 0.35 + ks * 0.25;
-                keywordHits.add(new Hit(score, seg));
+    /** 一批分块：文本未变的直接复用缓存向量，其余去重后一次 embedAll，最后整批写入向量库 */
+    private void flushBatch(EmbeddingStore<TextSegment> target, List<TextSegment> batch) {
+        List<String> texts = batch.stream().map(TextSegment::text).toList();
+        Map<String, Embedding> cached = chunkCache.getAll(modelId, texts);
+        List<String> missing = texts.stream().filter(t -> !cached.containsKey(t)).distinct().toList();
+        Map<String, Embedding> computed = new HashMap<>();
+        if (!missing.isEmpty()) {
+            List<Embedding> embedded = embeddingModel.embedAll(missing.stream().map(TextSegment::from).toList()).content();
+            if (embedded == null || embedded.size() != missing.size()) {
+                // 批量返回条数不符时逐条补算，保证向量与块一一对应
+                log.warn("embedAll 返回 {} 条，期望 {} 条，改为逐条 Embedding",
+                        embedded != null ? embedded.size() : 0, missing.size());
+                embedded = missing.stream().map(t -> embeddingModel.embed(t).content()).toList();
             }
+            for (int i = 0; i < missing.size(); i++) computed.put(missing.get(i), embedded.get(i));
         }
-
-        // 3) 融合与简单 rerank：向量分 + 关键词分
-        java.util.Map<TextSegment, Double> merged = new java.util.IdentityHashMap<>();
-        for (EmbeddingMatch<TextSegment> m : vecMatches) {
-            TextSegment seg = m.embedded();
-            if (seg == null) continue;
-            double score = m.score() + keywordScore(tokens, seg) * 0.25;
-            merged.put(seg, Math.max(merged.getOrDefault(seg, 0.0), score));
+        List<Embedding> embeddings = new ArrayList<>(batch.size());
+        for (String text : texts) {
+            Embedding e = cached.get(text);
+            embeddings.add(e != null ? e : computed.get(text));
         }
-        for (Hit h : keywordHits) {
-            TextSegment seg = h.seg();
-            if (seg == null) continue;
-            merged.put(seg, Math.max(merged.getOrDefault(seg, 0.0), h.score()));
-        }
-
-        java.util.List<java.util.Map.Entry<TextSegment, Double>> candidates = new java.util.ArrayList<>(merged.entrySet());
-        candidates.sort((a, b) -> Double.compare(b.getValue(), a.getValue()));
+        target.addAll(embeddings, batch);
+        chunkCache.putAll(modelId, computed);
+    }
 
-        // 4) 过滤（公司/部门）+ 同一面经限流
-        java.util.Map<Long, Integer> expCount = new java.util.LinkedHashMap<>();
-        java.util.List<String> result = new java.util.ArrayList<>();
-        for (var e : candidates) {
-            TextSegment seg = e.getKey();
-            if (seg == null || seg.metadata() == null) continue;
-            if (company != null && !company.isEmpty()) {
-                Object c = seg.metadata().get("company");
-                if (c == null || !company.equals(c.toString())) continue;
-            }
-            if (department != null && !department.isEmpty()) {
-                Object d = seg.metadata().get("department");
-                if (d == null || !department.equals(d.toString())) continue;
-            }
-            String eid = seg.metadata().get("experienceId") != null ? seg.metadata().get("experienceId").toString() : null;
-            Long expId = (eid != null && !eid.isEmpty()) ? Long.parseLong(eid) : 0L;
-            int cnt = expCount.getOrDefault(expId, 0);
-            if (cnt >= MAX_CHUNKS_PER_EXPERIENCE) continue;
-            expCount.put(expId, cnt + 1);
-            result.add(seg.text());
-            if (result.size() >= maxResults) break;
+    /**
+     * 检索：按 company/department 过滤，同一 experienceId 最多取 MAX_CHUNKS_PER_EXPERIENCE 块，再取 top maxResults。
+     * 候选被少数面经占满、去重后不足 maxResults 时把候选数翻倍重查，直到凑满、候选不再增加或超过过滤后的语料规模。
+     */
+    public List<String> search(String query, String company, String department, int maxResults) {
+        company = normalizeFilter(company);
+        department = normalizeFilter(department);
+        int fetch = Math.max(maxResults * 3, SEARCH_MIN_CANDIDATES);
+        int bound = candidateBound(company, department);
+        RetrievalResult result = retrieve(query, company, department, fetch);
+        List<String> top = result.top(maxResults);
+        while (top.size() < maxResults && fetch < bound) {
+            fetch = (int) Math.min((long) fetch * 2, bound);
+            int before = result.candidates().size();
+            result = retrieve(query, company, department, fetch);
+            top = result.top(maxResults);
+            if (result.candidates().size() <= before) break;
         }
-        return result;
+        return top;
     }
 
     public List<String> search(String query, int maxResults) {
         return search(query, null, null, maxResults);
     }
 
+    /** 公司 / 部门过滤值：去掉首尾空白，空串视为不过滤 */
+    private static String normalizeFilter(String value) {
+        if (value == null) return null;
+        String trimmed = value.trim();
+        return trimmed.isEmpty() ? null : trimmed;
+    }
+
+    /** 加宽候选数的上限：单机时为过滤后的块数，分片 / 双读时拿不到全局规模，只靠「候选不再增加」停止 */
+    private int candidateBound(String company, String department) {
+        if (shards.enabled() || legacy != null || !(embeddingStore instanceof InterviewEmbeddingStore store)) {
+            return Integer.MAX_VALUE;
+        }
+        return store.filteredSize(InterviewEmbeddingStore.SearchFilter.of(company, department));
+    }
+
     /**
      * 结构化检索：按类型分组，用于深挖问题生成时拼【参考面经-实习】等。
      * 同一 experienceId 最多 2 块，再按 type 聚合为 Map<type, List<text>>。
      */
     public Map<String, String> searchStructuredForDeepQuestions(String query, String company, String department) {
-        java.util.List<String> tokens = tokenize(query);
-        Embedding queryEmbedding = embeddingModel.embed(query).content();
-        java.util.List<EmbeddingMatch<TextSegment>> vecMatches = embeddingStore.findRelevant(queryEmbedding, 25, 0.4);
+        return retrieve(query, company, department).byType(TYPE_ORDER, 600);
+    }
 
-        java.util.List<TextSegment> all;
-        if (embeddingStore instanceof InterviewEmbeddingStore) {
-            all = ((InterviewEmbeddingStore) embeddingStore).allSegments();
-        } else {
-            all = java.util.List.of();
-        }
-        java.util.List<Hit> keywordHits = new java.util.ArrayList<>();
-        if (!tokens.isEmpty() && !all.isEmpty()) {
-            for (TextSegment seg : all) {
-                double ks = keywordScore(tokens, seg);
-                if (ks <= 0) continue;
-                keywordHits.add(new Hit(0.35 + ks * 0.25, seg));
+    public RetrievalResult retrieve(String query, String company, String department) {
+        return retrieve(query, company, department, DEFAULT_CANDIDATES);
+    }
+
+    /**
+     * 统一检索管线，只执行一次：查询向量 → 向量召回 + 关键词召回（均下推公司/部门过滤）→ 融合打分 → 排序 → 过滤。
+     * 返回的候选集可同时用于平铺 top-K（{@link RetrievalResult#top}）和按类型聚合（{@link RetrievalResult#byType}）。
+     * 分片模式下本节点作为协调者，合并各分片在超时内返回的候选。
+     * 单机模式下结果按 查询 + 过滤条件 + 候选数 缓存，向量库版本变化即失效。
+     */
+    public RetrievalResult retrieve(String query, String company, String department, int vectorCandidates) {
+        if (query == null || query.isBlank()) return RetrievalResult.empty();
+        // 过滤条件只在这里归一化一次，缓存 key 与下推到向量库的过滤条件使用同一组值
+        company = normalizeFilter(company);
+        department = normalizeFilter(department);
+        RetrievalMetrics.Trace trace = metrics.start(query);
+        try {
+            // 分片模式下拿不到远端分片的版本号，双读期间旧库的版本不在 key 中，均不缓存
+            if (!resultCache.enabled() || shards.enabled() || legacy != null
+                    || !(embeddingStore instanceof InterviewEmbeddingStore store)) {
+                return retrieveUncached(query, company, department, vectorCandidates, trace);
             }
+            String key = RetrievalResultCache.key(query, company, department, vectorCandidates);
+            long version = store.version();
+            RetrievalResult cached = resultCache.get(key, version);
+            trace.cache(cached != null);
+            if (cached != null) return cached;
+            RetrievalResult result = retrieveUncached(query, company, department, vectorCandidates, trace);
+            resultCache.put(key, version, result);
+            return result;
+        } finally {
+            trace.finish();
         }
+    }
 
-        java.util.Map<TextSegment, Double> merged = new java.util.IdentityHashMap<>();
-        for (EmbeddingMatch<TextSegment> m2 : vecMatches) {
-            TextSegment seg = m2.embedded();
-            if (seg == null) continue;
-            merged.put(seg, Math.max(merged.getOrDefault(seg, 0.0), m2.score() + keywordScore(tokens, seg) * 0.25));
+    private RetrievalResult retrieveUncached(String query, String company, String department, int vectorCandidates,
+                                             RetrievalMetrics.Trace trace) {
+        long t = System.nanoTime();
+        Embedding queryEmbedding = embedQuery(query);
+        trace.lap(RetrievalMetrics.Stage.EMBED, t);
+        if (!shards.enabled()) {
+            return new RetrievalResult(retrieveLocal(query, queryEmbedding, company, department, vectorCandidates, trace),
+                    MAX_CHUNKS_PER_EXPERIENCE);
         }
-        for (Hit h : keywordHits) {
-            TextSegment seg = h.seg();
-            if (seg == null) continue;
-            merged.put(seg, Math.max(merged.getOrDefault(seg, 0.0), h.score()));
+        // 分片模式：先异步发出远端分片请求，再做本地检索，最后合并各分片的部分 top-K
+        var remote = shards.scatter(new RagShardClient.ShardQuery(query, queryEmbedding.vector(), modelId,
+                company, department, vectorCandidates));
+        // 本地候选与各分片一样截断到 vectorCandidates，合并时按同样口径比较
+        List<RetrievalResult.Candidate> local = retrieveLocal(query, queryEmbedding, company, department, vectorCandidates, trace);
+        List<RetrievalResult.Candidate> candidates =
+                new ArrayList<>(local.subList(0, Math.min(local.size(), Math.max(1, vectorCandidates))));
+        t = System.nanoTime();
+        candidates.addAll(remote.join());
+        t = trace.lap(RetrievalMetrics.Stage.SHARDS, t);
+        candidates.sort((a, b) -> Double.compare(b.score(), a.score()));
+        trace.lap(RetrievalMetrics.Stage.MERGE, t);
+        return new RetrievalResult(candidates, MAX_CHUNKS_PER_EXPERIENCE);
+    }
+
+    /** 分片节点处理协调者的请求：只检索本地分片，向量与协调者模型一致时直接复用 */
+    public List<RagShardClient.ShardHit> retrieveShard(RagShardClient.ShardQuery q) {
+        if (q.query() == null || q.query().isBlank()) return List.of();
+        Embedding queryEmbedding = q.vector() != null && modelId.equals(q.modelId())
+                ? Embedding.from(q.vector()) : embedQuery(q.query());
+        int candidates = Math.max(1, q.candidates());
+        RetrievalMetrics.Trace trace = metrics.start(q.query());
+        try {
+            return retrieveLocal(q.query(), queryEmbedding, normalizeFilter(q.company()), normalizeFilter(q.department()),
+                            candidates, trace).stream()
+                    .limit(candidates)
+                    .map(RagShardClient.ShardHit::of)
+                    .toList();
+        } finally {
+            trace.finish();
         }
+    }
 
-        java.util.List<java.util.Map.Entry<TextSegment, Double>> candidates = new java.util.ArrayList<>(merged.entrySet());
-        candidates.sort((a, b) -> Double.compare(b.getValue(), a.getValue()));
+    private List<RetrievalResult.Candidate> retrieveLocal(String query, Embedding queryEmbedding, String company,
+                                                          String department, int vectorCandidates, RetrievalMetrics.Trace trace) {
+        List<RetrievalResult.Candidate> current =
+                recall(embeddingStore, query, queryEmbedding, company, department, vectorCandidates, trace);
+        Namespace old = legacy;
+        if (old == null) return current;
+        // 双读：旧模型的库仍是主体（查询向量用旧模型计算），新库补上旧库中已没有的面经（切换期间新增 / 变更的）
+        long t = System.nanoTime();
+        Embedding oldQuery;
+        try {
+            oldQuery = queryCache.get(old.modelId(), query, text -> old.model().embed(text).content());
+        } catch (RuntimeException e) {
+            log.warn("旧模型 {} 查询向量计算失败，本次只查新库: {}", old.modelId(), e.getMessage());
+            return current;
+        }
+        trace.lap(RetrievalMetrics.Stage.EMBED, t);
+        List<RetrievalResult.Candidate> candidates =
+                new ArrayList<>(recall(old.store(), query, oldQuery, company, department, vectorCandidates, trace));
+        t = System.nanoTime();
+        for (RetrievalResult.Candidate c : current) {
+            if (!old.store().containsExperience(c.experienceId())) candidates.add(c);
+        }
+        candidates.sort((a, b) -> Double.compare(b.score(), a.score()));
+        trace.lap(RetrievalMetrics.Stage.MERGE, t);
+        return candidates;
+    }
 
-        java.util.Map<Long, java.util.List<Hit>> byExp = new java.util.LinkedHashMap<>();
-        for (var e : candidates) {
-            TextSegment seg = e.getKey();
-            if (seg == null || seg.metadata() == null) continue;
-            if (company != null && !company.isEmpty()) {
-                Object c = seg.metadata().get("company");
-                if (c == null || !company.equals(c.toString())) continue;
-            }
-            if (department != null && !department.isEmpty()) {
-                Object d = seg.metadata().get("department");
-                if (d == null || !department.equals(d.toString())) continue;
-            }
-            String eid = seg.metadata().get("experienceId") != null ? seg.metadata().get("experienceId").toString() : null;
-            Long expId = eid != null && !eid.isEmpty() ? Long.parseLong(eid) : 0L;
-            byExp.computeIfAbsent(expId, k -> new java.util.ArrayList<>()).add(new Hit(e.getValue(), seg));
-        }
-
-        java.util.Map<String, java.util.List<String>> byType = new java.util.LinkedHashMap<>();
-        for (java.util.List<Hit> list : byExp.values()) {
-            list.stream()
-                    .sorted((a, b) -> Double.compare(b.score(), a.score()))
-                    .limit(MAX_CHUNKS_PER_EXPERIENCE)
-                    .forEach(h -> {
-                        TextSegment seg = h.seg();
-                        String type = seg.metadata().get("type") != null ? seg.metadata().get("type").toString() : TYPE_OVERVIEW;
-                        byType.computeIfAbsent(type, k -> new java.util.ArrayList<>()).add(seg.text());
-                    });
-        }
-        Map<String, String> out = new LinkedHashMap<>();
-        for (String type : java.util.List.of(TYPE_INTERNSHIP, TYPE_PROJECT, TYPE_BAGU_JAVA, TYPE_BAGU_AI, TYPE_ALGORITHM, TYPE_OVERVIEW)) {
-            java.util.List<String> texts = byType.get(type);
-            if (texts != null && !texts.isEmpty()) {
-                String joined = String.join("\n\n---\n\n", texts.stream().map(t -> t.length() > 600 ? t.substring(0, 600) + "..." : t).toList());
-                out.put(type, joined);
-            }
+    private List<RetrievalResult.Candidate> recall(EmbeddingStore<TextSegment> store, String query, Embedding queryEmbedding,
+                                                   String company, String department, int vectorCandidates,
+                                                   RetrievalMetrics.Trace trace) {
+        // 1) 向量召回（语义）：公司/部门过滤下推到向量库，只在命中分区内取 top
+        InterviewEmbeddingStore.SearchFilter filter = InterviewEmbeddingStore.SearchFilter.of(company, department);
+        if (store instanceof InterviewEmbeddingStore s) {
+            int corpus = s.size();
+            trace.selectivity(filter.isEmpty() ? corpus : s.filteredSize(filter), corpus);
         }
-        return out;
+        long t = System.nanoTime();
+        List<EmbeddingMatch<TextSegment>> vecMatches = vectorRecall(store, queryEmbedding, vectorCandidates, filter);
+        t = trace.lap(RetrievalMetrics.Stage.VECTOR, t);
+
+        // 2) 关键词召回（补召回，避免纯向量漏掉关键术语）：中文二元组 + 英文整词的 BM25，走倒排索引只触达命中的块，
+        //    与向量召回取同样多的 top，只有这些块会被还原为 TextSegment
+        Map<String, InterviewEmbeddingStore.KeywordMatch> keywordHits = keywordHits(store, query, filter, vectorCandidates);
+        //    不在关键词 top 内的向量候选直接按 id 补算关键词分，融合时不丢加成
+        Map<String, Double> vectorKeywordScores = vectorKeywordScores(store, query, filter, vecMatches, keywordHits);
+        t = trace.lap(RetrievalMetrics.Stage.KEYWORD, t);
+        trace.candidates(RetrievalMetrics.Source.VECTOR, vecMatches.size());
+        trace.candidates(RetrievalMetrics.Source.KEYWORD, keywordHits.size());
+
+        // 3) 融合与简单 rerank：向量分 + 关键词分；keyword-only 以基础分参与候选池。按块 id 对齐两路结果
+        Map<String, Double> merged = new HashMap<>();
+        Map<String, TextSegment> segmentsById = new HashMap<>();
+        for (EmbeddingMatch<TextSegment> m : vecMatches) {
+            TextSegment seg = m.embedded();
+            if (seg == null) continue;
+            InterviewEmbeddingStore.KeywordMatch kw = keywordHits.get(m.embeddingId());
+            double keywordScore = kw != null ? kw.score() : vectorKeywordScores.getOrDefault(m.embeddingId(), 0.0);
+            double score = m.score() + keywordScore * 0.25;
+            merged.merge(m.embeddingId(), score, Math::max);
+            segmentsById.putIfAbsent(m.embeddingId(), seg);
+        }
+        for (InterviewEmbeddingStore.KeywordMatch kw : keywordHits.values()) {
+            merged.merge(kw.id(), 0.35 + kw.score() * 0.25, Math::max);
+            segmentsById.putIfAbsent(kw.id(), kw.segment());
+        }
+        t = trace.lap(RetrievalMetrics.Stage.MERGE, t);
+        trace.candidates(RetrievalMetrics.Source.MERGED, merged.size());
+
+        // 4) 过滤（公司/部门，兼容不支持下推的 EmbeddingStore）后按分数降序
+        List<RetrievalResult.Candidate> candidates = new ArrayList<>(merged.size());
+        for (var e : merged.entrySet()) {
+            TextSegment seg = segmentsById.get(e.getKey());
+            if (seg.metadata() == null) continue;
+            if (company != null && !company.isEmpty() && !company.equals(metaString(seg, "company"))) continue;
+            if (department != null && !department.isEmpty() && !department.equals(metaString(seg, "department"))) continue;
+            String eid = metaString(seg, "experienceId");
+            long expId = eid != null && !eid.isEmpty() ? Long.parseLong(eid) : 0L;
+            String type = metaString(seg, "type");
+            candidates.add(new RetrievalResult.Candidate(seg, e.getValue(), expId, type != null ? type : TYPE_OVERVIEW));
+        }
+        candidates.sort((a, b) -> Double.compare(b.score(), a.score()));
+        trace.lap(RetrievalMetrics.Stage.FILTER, t);
+        trace.candidates(RetrievalMetrics.Source.RETURNED, candidates.size());
+        return candidates;
+    }
+
+    private static String metaString(TextSegment seg, String key) {
+        Object v = seg.metadata().get(key);
+        return v != null ? v.toString() : null;
     }
 
     private List<ChunkMeta> buildChunks(InterviewExperience exp) {
@@ -276,38 +669,51 @@ public class RagService {
 
     // --------- 多路召回 + 简单 rerank（向量 + 关键词） ---------
 
-    private List<String> tokenize(String q) {
-        if (q == null) return java.util.List.of();
-        String cleaned = q.replaceAll("\\s+", " ").trim();
-        if (cleaned.isEmpty()) return java.util.List.of();
-        // 简单切分：按空白和常见符号切；中文保留为整体词块（更高级可做分词）
-        String[] parts = cleaned.split("[\\s,，;；/|]+");
-        java.util.List<String> out = new java.util.ArrayList<>();
-        for (String p : parts) {
-            String t = p.trim();
-            if (t.length() >= 2) out.add(t);
+    /** 查询向量走缓存，同一问题在 answer / followups / evaluate 间只调用一次 Embedding */
+    private Embedding embedQuery(String query) {
+        return queryCache.get(modelId, query, text -> embeddingModel.embed(text).content());
+    }
+
+    /** 向量召回：自带向量库时过滤条件下推，否则退化为全库检索 + 调用方后置过滤 */
+    private static List<EmbeddingMatch<TextSegment>> vectorRecall(EmbeddingStore<TextSegment> target, Embedding queryEmbedding,
+                                                                  int fetch, InterviewEmbeddingStore.SearchFilter filter) {
+        if (target instanceof InterviewEmbeddingStore store) {
+            int dimension = store.dimension();
+            if (dimension > 0 && dimension != queryEmbedding.dimension()) {
+                // 查询向量与库内向量不属于同一模型，余弦分没有意义，只靠关键词召回
+                log.warn("查询向量 {} 维与向量库 {} 维不一致，跳过向量召回", queryEmbedding.dimension(), dimension);
+                return List.of();
+            }
+            return store.findRelevant(queryEmbedding, fetch, 0.4, filter);
         }
-        return out;
+        return target.findRelevant(queryEmbedding, fetch, 0.4);
+    }
+
+    /** 向量候选中未进入关键词 top 的块：块 id → 关键词分 */
+    private static Map<String, Double> vectorKeywordScores(EmbeddingStore<TextSegment> target, String query,
+                                                           InterviewEmbeddingStore.SearchFilter filter,
+                                                           List<EmbeddingMatch<TextSegment>> vecMatches,
+                                                           Map<String, InterviewEmbeddingStore.KeywordMatch> keywordHits) {
+        if (!(target instanceof InterviewEmbeddingStore store)) return Map.of();
+        List<String> missing = new ArrayList<>();
+        for (EmbeddingMatch<TextSegment> m : vecMatches) {
+            if (m.embeddingId() != null && !keywordHits.containsKey(m.embeddingId())) missing.add(m.embeddingId());
+        }
+        return missing.isEmpty() ? Map.of() : store.keywordScores(query, filter, missing);
     }
 
-    private double keywordScore(java.util.List<String> tokens, TextSegment seg) {
-        if (tokens == null || tokens.isEmpty() || seg == null) return 0;
-        String text = seg.text() != null ? seg.text() : "";
-        String company = seg.metadata() != null && seg.metadata().get("company") != null ? seg.metadata().get("company").toString() : "";
-        String dept = seg.metadata() != null && seg.metadata().get("department") != null ? seg.metadata().get("department").toString() : "";
-        String type = seg.metadata() != null && seg.metadata().get("type") != null ? seg.metadata().get("type").toString() : "";
-        String hay = (company + " " + dept + " " + type + " " + text).toLowerCase();
-        int hit = 0;
-        for (String t : tokens) {
-            if (t == null || t.isBlank()) continue;
-            String k = t.toLowerCase();
-            if (hay.contains(k)) hit++;
+    /** 关键词召回：块 id（与向量召回的 embeddingId 一致）→ 命中 */
+    private static Map<String, InterviewEmbeddingStore.KeywordMatch> keywordHits(EmbeddingStore<TextSegment> target, String query,
+                                                                               InterviewEmbeddingStore.SearchFilter filter,
+                                                                               int limit) {
+        Map<String, InterviewEmbeddingStore.KeywordMatch> out = new HashMap<>();
+        if (!(target instanceof InterviewEmbeddingStore store)) return out;
+        for (InterviewEmbeddingStore.KeywordMatch km : store.keywordSearch(query, filter, limit)) {
+            out.put(km.id(), km);
         }
-        // 0~1 的简单归一化
-        return tokens.isEmpty() ? 0 : (double) hit / (double) tokens.size();
+        return out;
     }
 
-    private record Hit(double score, TextSegment seg) {}
     private static class ChunkMeta {
         final String text;
         final String type;
@@ -0,0 +1,166 @@
+package com.interview.assistant.service;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.segment.TextSegment;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 分片检索：面经按 experienceId 哈希分到 app.rag.shard.count 个节点，每个节点只索引自己的分片。
+ * <p>
+ * 收到查询的节点作为协调者，本地检索的同时并行调用其它分片的 /api/rag/shard/retrieve，
+ * 每个分片单独超时，慢 / 失败的分片直接丢弃，用已返回的部分 top-K 合并。
+ * 各节点须共用同一个数据库：接收上传 / 删除的节点通过 {@link #notifyOwners} 让归属分片立即从库中同步这些面经，
+ * 不依赖定期增量同步。count ≤ 1 时退化为单机模式。
+ */
+@Component
+public class RagShardClient {
+
+    private static final Logger log = LoggerFactory.getLogger(RagShardClient.class);
+
+    /** 分片检索请求：协调者已算好的查询向量随请求下发，分片节点无需再调 Embedding */
+    public record ShardQuery(String query, float[] vector, String modelId,
+                             String company, String department, int candidates) {}
+
+    /** 分片返回的单个候选块 */
+    public record ShardHit(String text, Map<String, Object> metadata, double score, long experienceId, String type) {
+
+        static ShardHit of(RetrievalResult.Candidate c) {
+            return new ShardHit(c.segment().text(), c.segment().metadata().toMap(), c.score(), c.experienceId(), c.type());
+        }
+
+        RetrievalResult.Candidate toCandidate() {
+            Metadata meta = metadata != null ? new Metadata(metadata) : new Metadata();
+            return new RetrievalResult.Candidate(TextSegment.from(text, meta), score, experienceId, type);
+        }
+    }
+
+    private final int count;
+    private final int index;
+    private final List<String> nodes;
+    private final Duration timeout;
+    private final String adminPassword;
+    private final WebClient client;
+
+    @Autowired
+    public RagShardClient(@Value("${app.rag.shard.count:1}") int count,
+                          @Value("${app.rag.shard.index:0}") int index,
+                          @Value("${app.rag.shard.nodes:}") String nodes,
+                          @Value("${app.rag.shard.timeout:PT1S}") Duration timeout,
+                          @Value("${app.admin-password:}") String adminPassword,
+                          WebClient.Builder webClientBuilder) {
+        this.nodes = Arrays.stream(nodes.split(",")).map(String::trim).filter(s -> !s.isEmpty()).toList();
+        this.count = Math.max(1, count);
+        this.index = index;
+        this.timeout = timeout;
+        this.adminPassword = adminPassword != null ? adminPassword.trim() : "";
+        this.client = webClientBuilder != null ? webClientBuilder.build() : null;
+        if (enabled() && (this.nodes.size() != this.count || index < 0 || index >= this.count)) {
+            throw new IllegalStateException("app.rag.shard.nodes 需按分片顺序列出全部 " + this.count
+                    + " 个节点地址，当前 index=" + index + "，nodes=" + this.nodes);
+        }
+    }
+
+    /** 单机模式：不分片 */
+    public static RagShardClient local() {
+        return new RagShardClient(1, 0, "", Duration.ofSeconds(1), "", null);
+    }
+
+    public boolean enabled() {
+        return count > 1;
+    }
+
+    public int count() {
+        return count;
+    }
+
+    public int index() {
+        return index;
+    }
+
+    /** 该面经是否归本节点索引 */
+    public boolean owns(long experienceId) {
+        return !enabled() || shardOf(experienceId) == index;
+    }
+
+    public int shardOf(long experienceId) {
+        return Math.floorMod(Long.hashCode(experienceId), count);
+    }
+
+    /** 并行查询除本节点外的全部分片，异步返回在超时内到达的候选；调用方可同时做本地检索 */
+    public CompletableFuture<List<RetrievalResult.Candidate>> scatter(ShardQuery query) {
+        if (!enabled()) return CompletableFuture.completedFuture(List.of());
+        List<Mono<List<ShardHit>>> calls = new ArrayList<>(count - 1);
+        for (int shard = 0; shard < count; shard++) {
+            if (shard == index) continue;
+            String node = nodes.get(shard);
+            calls.add(fetch(node, query)
+                    .timeout(timeout)
+                    .onErrorResume(e -> {
+                        log.warn("RAG 分片 {} 未在 {} ms 内返回，按部分结果合并: {}", node, timeout.toMillis(), e.toString());
+                        return Mono.just(List.of());
+                    }));
+        }
+        return Flux.merge(calls)
+                .flatMapIterable(part -> part)
+                .map(ShardHit::toCandidate)
+                .collectList()
+                .toFuture();
+    }
+
+    /**
+     * 通知归属其它分片的面经所在节点立即同步（新增 / 变更 / 删除均可，由对方按数据库现状处理）。
+     * 异步发送，失败只记日志，由对方的定期增量同步兜底。
+     */
+    public void notifyOwners(Collection<Long> experienceIds) {
+        if (!enabled()) return;
+        Map<Integer, List<Long>> byShard = new TreeMap<>();
+        for (Long id : experienceIds) {
+            if (id == null || owns(id)) continue;
+            byShard.computeIfAbsent(shardOf(id), k -> new ArrayList<>()).add(id);
+        }
+        byShard.forEach((shard, ids) -> {
+            String node = nodes.get(shard);
+            push(node, ids)
+                    .timeout(timeout)
+                    .subscribe(v -> { }, e -> log.warn("通知 RAG 分片 {} 同步 {} 条面经失败，等待其定期同步: {}",
+                            node, ids.size(), e.toString()));
+        });
+    }
+
+    /** 调用单个分片节点；测试中可覆写为本地实现 */
+    protected Mono<List<ShardHit>> fetch(String node, ShardQuery query) {
+        return client.post()
+                .uri(node + "/api/rag/shard/retrieve")
+                .header("X-Admin-Password", adminPassword)
+                .bodyValue(query)
+                .retrieve()
+                .bodyToFlux(ShardHit.class)
+                .collectList();
+    }
+
+    /** 通知单个分片节点同步指定面经；测试中可覆写 */
+    protected Mono<Void> push(String node, List<Long> experienceIds) {
+        return client.post()
+                .uri(node + "/api/rag/shard/sync")
+                .header("X-Admin-Password", adminPassword)
+                .bodyValue(experienceIds)
+                .retrieve()
+                .bodyToMono(Void.class);
+    }
+}
@@ -0,0 +1,174 @@
+package com.interview.assistant.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * RAG 检索分阶段指标（Micrometer，经 /actuator/metrics 暴露）：
+ * rag.retrieval.stage{stage} 各阶段耗时、rag.retrieval.total 单次检索总耗时、rag.retrieval.candidates{source} 各路候选数、
+ * rag.retrieval.selectivity 过滤后语料占比、rag.retrieval.requests{cache} 结果缓存命中、rag.corpus.chunks 语料块数、
+ * rag.cache.requests{cache,result} 查询向量 / 分块向量 / 检索结果缓存的累计命中。
+ * 单次检索超过 app.rag.metrics.slow-threshold 时输出该请求的分阶段明细日志。
+ */
+@Component
+public class RetrievalMetrics {
+
+    private static final Logger log = LoggerFactory.getLogger(RetrievalMetrics.class);
+
+    public enum Stage {
+        /** 查询向量（含查询向量缓存） */
+        EMBED,
+        /** 向量召回 */
+        VECTOR,
+        /** 关键词召回 */
+        KEYWORD,
+        /** 向量分与关键词分融合（双读时含新旧库合并） */
+        MERGE,
+        /** 公司 / 部门后置过滤与排序 */
+        FILTER,
+        /** 等待远端分片返回 */
+        SHARDS;
+
+        final String tag = name().toLowerCase();
+    }
+
+    public enum Source { VECTOR, KEYWORD, MERGED, RETURNED }
+
+    private final MeterRegistry registry;
+    private final long slowThresholdNanos;
+    private final Map<Stage, Timer> stageTimers = new EnumMap<>(Stage.class);
+    private final Map<Source, DistributionSummary> candidates = new EnumMap<>(Source.class);
+    private final Timer total;
+    private final DistributionSummary selectivity;
+    private final Counter cacheHits;
+    private final Counter cacheMisses;
+    private final Counter cacheBypassed;
+
+    public RetrievalMetrics(MeterRegistry registry,
+                            @Value("${app.rag.metrics.slow-threshold:PT1S}") Duration slowThreshold) {
+        this.registry = registry;
+        this.slowThresholdNanos = slowThreshold != null ? slowThreshold.toNanos() : 0;
+        for (Stage stage : Stage.values()) {
+            stageTimers.put(stage, Timer.builder("rag.retrieval.stage").tag("stage", stage.tag)
+                    .description("RAG 检索各阶段耗时").publishPercentiles(0.5, 0.99).register(registry));
+        }
+        for (Source source : Source.values()) {
+            candidates.put(source, DistributionSummary.builder("rag.retrieval.candidates")
+                    .tag("source", source.name().toLowerCase()).description("RAG 检索各路候选数").register(registry));
+        }
+        this.total = Timer.builder("rag.retrieval.total").description("RAG 单次检索总耗时")
+                .publishPercentiles(0.5, 0.99).register(registry);
+        this.selectivity = DistributionSummary.builder("rag.retrieval.selectivity")
+                .description("公司 / 部门过滤后块数占语料比例").register(registry);
+        this.cacheHits = Counter.builder("rag.retrieval.requests").tag("cache", "hit").register(registry);
+        this.cacheMisses = Counter.builder("rag.retrieval.requests").tag("cache", "miss").register(registry);
+        this.cacheBypassed = Counter.builder("rag.retrieval.requests").tag("cache", "bypass").register(registry);
+    }
+
+    /** 不接入应用指标、不输出慢检索日志，用于测试与直接 new 出来的 RagService */
+    public static RetrievalMetrics noop() {
+        return new RetrievalMetrics(new SimpleMeterRegistry(), Duration.ZERO);
+    }
+
+    /** 语料规模等随时读取的量 */
+    public <T> void gauge(String name, T obj, ToDoubleFunction<T> value) {
+        Gauge.builder(name, obj, value).register(registry);
+    }
+
+    /** 缓存的累计命中 / 未命中，取自缓存自身的统计 */
+    public <T> void cache(String cache, T obj, ToDoubleFunction<T> hits, ToDoubleFunction<T> misses) {
+        FunctionCounter.builder("rag.cache.requests", obj, hits).tag("cache", cache).tag("result", "hit").register(registry);
+        FunctionCounter.builder("rag.cache.requests", obj, misses).tag("cache", cache).tag("result", "miss").register(registry);
+    }
+
+    public Trace start(String query) {
+        return new Trace(query);
+    }
+
+    /** 单次检索的分阶段耗时与计数，随检索调用链传递；只在一个线程内使用 */
+    public final class Trace {
+
+        private final String query;
+        private final long startNanos = System.nanoTime();
+        private final long[] stageNanos = new long[Stage.values().length];
+        private final int[] counts = new int[Source.values().length];
+        private double selectivityRatio = -1;
+        private int corpus = -1;
+        private String cache = "bypass";
+
+        private Trace(String query) {
+            this.query = query;
+        }
+
+        /** 记录从 since 到现在的阶段耗时（同一阶段多次调用时累加），返回当前时刻供下一阶段使用 */
+        public long lap(Stage stage, long since) {
+            long now = System.nanoTime();
+            long nanos = now - since;
+            stageNanos[stage.ordinal()] += nanos;
+            stageTimers.get(stage).record(nanos, TimeUnit.NANOSECONDS);
+            return now;
+        }
+
+        public void candidates(Source source, int n) {
+            counts[source.ordinal()] += n;
+            candidates.get(source).record(n);
+        }
+
+        /** 过滤后块数 / 语料块数 */
+        public void selectivity(int matched, int corpusSize) {
+            corpus = corpusSize;
+            if (corpusSize <= 0) return;
+            selectivityRatio = (double) matched / corpusSize;
+            selectivity.record(selectivityRatio);
+        }
+
+        public void cache(boolean hit) {
+            cache = hit ? "hit" : "miss";
+        }
+
+        public void finish() {
+            long nanos = System.nanoTime() - startNanos;
+            total.record(nanos, TimeUnit.NANOSECONDS);
+            switch (cache) {
+                case "hit" -> cacheHits.increment();
+                case "miss" -> cacheMisses.increment();
+                default -> cacheBypassed.increment();
+            }
+            if (slowThresholdNanos > 0 && nanos >= slowThresholdNanos) {
+                log.warn("RAG 慢检索 {} ms [{}]: {} | 候选 vector={} keyword={} merged={} returned={} | 语料 {} 块，选择度 {} | 结果缓存 {}",
+                        ms(nanos), query, stageBreakdown(), counts[Source.VECTOR.ordinal()], counts[Source.KEYWORD.ordinal()],
+                        counts[Source.MERGED.ordinal()], counts[Source.RETURNED.ordinal()], corpus,
+                        selectivityRatio < 0 ? "-" : String.format("%.3f", selectivityRatio), cache);
+            }
+        }
+
+        private String stageBreakdown() {
+            StringBuilder sb = new StringBuilder();
+            for (Stage stage : Stage.values()) {
+                if (stageNanos[stage.ordinal()] == 0) continue;
+                if (!sb.isEmpty()) sb.append(' ');
+                sb.append(stage.tag).append('=').append(ms(stageNanos[stage.ordinal()])).append("ms");
+            }
+            return sb.toString();
+        }
+
+        private static String ms(long nanos) {
+            return String.format("%.1f", nanos / 1_000_000.0);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.interview.assistant.service;
+
+import dev.langchain4j.data.segment.TextSegment;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 一次检索的候选集：向量 + 关键词融合打分、按公司/部门过滤并按分数降序排好。
+ * 平铺 top-K、按类型聚合等都是该候选集上的轻量视图，同一请求内可被多个调用方复用而不重复检索。
+ * 不可变，可跨线程共享。
+ */
+public final class RetrievalResult {
+
+    /** 单个候选块；experienceId 缺失时为 0 */
+    public record Candidate(TextSegment segment, double score, long experienceId, String type) {}
+
+    private static final RetrievalResult EMPTY = new RetrievalResult(List.of(), 0);
+
+    private final List<Candidate> candidates;
+    private final int maxPerExperience;
+
+    RetrievalResult(List<Candidate> candidates, int maxPerExperience) {
+        this.candidates = List.copyOf(candidates);
+        this.maxPerExperience = maxPerExperience;
+    }
+
+    public static RetrievalResult empty() {
+        return EMPTY;
+    }
+
+    /** 按分数降序的全部候选 */
+    public List<Candidate> candidates() {
+        return candidates;
+    }
+
+    public boolean isEmpty() {
+        return candidates.isEmpty();
+    }
+
+    /** 平铺 top-K 文本：同一面经最多 maxPerExperience 块 */
+    public List<String> top(int maxResults) {
+        Map<Long, Integer> expCount = new HashMap<>();
+        List<String> result = new ArrayList<>();
+        for (Candidate c : candidates) {
+            if (result.size() >= maxResults) break;
+            int cnt = expCount.getOrDefault(c.experienceId(), 0);
+            if (cnt >= maxPerExperience) continue;
+            expCount.put(c.experienceId(), cnt + 1);
+            result.add(c.segment().text());
+        }
+        return result;
+    }
+
+    /**
+     * 按类型聚合：同一面经取分数最高的 maxPerExperience 块，再按 typeOrder 顺序拼接每类文本
+     * （单块超过 maxCharsPerChunk 截断），没有命中的类型不出现在结果中。
+     * 类内顺序按面经分组：面经按其最高分排序，同一面经的块连续出现，便于上下文按面经阅读。
+     */
+    public Map<String, String> byType(List<String> typeOrder, int maxCharsPerChunk) {
+        // candidates 已按分数降序，首次出现的顺序即面经按最高分的顺序
+        Map<Long, List<Candidate>> byExperience = new LinkedHashMap<>();
+        for (Candidate c : candidates) {
+            List<Candidate> list = byExperience.computeIfAbsent(c.experienceId(), k -> new ArrayList<>());
+            if (list.size() < maxPerExperience) list.add(c);
+        }
+        Map<String, List<String>> byType = new HashMap<>();
+        for (List<Candidate> list : byExperience.values()) {
+            for (Candidate c : list) {
+                String text = c.segment().text();
+                if (text.length() > maxCharsPerChunk) text = text.substring(0, maxCharsPerChunk) + "...";
+                byType.computeIfAbsent(c.type(), k -> new ArrayList<>()).add(text);
+            }
+        }
+        Map<String, String> out = new LinkedHashMap<>();
+        for (String type : typeOrder) {
+            List<String> texts = byType.get(type);
+            if (texts != null && !texts.isEmpty()) out.put(type, String.join("\n\n---\n\n", texts));
+        }
+        return out;
+    }
+}
@@ -0,0 +1,105 @@
+package com.interview.assistant.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 检索结果缓存：key 为 规范化查询 + 公司 + 部门 + 候选数，value 为整份 {@link RetrievalResult}（不可变，可直接共享）。
+ * <p>
+ * 每条缓存记录写入时的向量库版本号，读取时版本不一致即视为失效并删除，
+ * 因此任何增删之后都不会再返回旧结果；另有 LRU 容量与 TTL 兜底。
+ */
+@Component
+public class RetrievalResultCache {
+
+    /** 缓存命中统计；stale 为因索引版本变化而失效的次数 */
+    public record Stats(long hits, long misses, long stale, int size) {
+        public double hitRate() {
+            long total = hits + misses;
+            return total == 0 ? 0 : (double) hits / total;
+        }
+    }
+
+    private record Entry(RetrievalResult result, long indexVersion, long expireAt) {}
+
+    private final int maxSize;
+    private final long ttlNanos;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong stale = new AtomicLong();
+
+    public RetrievalResultCache(@Value("${app.rag.result-cache.max-size:1024}") int maxSize,
+                                @Value("${app.rag.result-cache.ttl-seconds:600}") long ttlSeconds) {
+        this.maxSize = maxSize;
+        this.ttlNanos = Math.max(1, ttlSeconds) * 1_000_000_000L;
+    }
+
+    /** 不缓存，用于测试与直接 new 出来的 RagService */
+    public static RetrievalResultCache disabled() {
+        return new RetrievalResultCache(0, 1);
+    }
+
+    public boolean enabled() {
+        return maxSize > 0;
+    }
+
+    public static String key(String query, String company, String department, int candidates) {
+        return QueryEmbeddingCache.normalize(query) + '\n' + (company != null ? company.trim() : "")
+                + '\n' + (department != null ? department.trim() : "") + '\n' + candidates;
+    }
+
+    /** 取与当前索引版本一致的缓存结果，没有则返回 null */
+    public RetrievalResult get(String key, long indexVersion) {
+        synchronized (entries) {
+            Entry e = entries.get(key);
+            if (e == null) {
+                misses.incrementAndGet();
+                return null;
+            }
+            if (e.indexVersion() != indexVersion) {
+                entries.remove(key);
+                stale.incrementAndGet();
+                misses.incrementAndGet();
+                return null;
+            }
+            if (System.nanoTime() - e.expireAt() > 0) {
+                entries.remove(key);
+                misses.incrementAndGet();
+                return null;
+            }
+            hits.incrementAndGet();
+            return e.result();
+        }
+    }
+
+    /** indexVersion 须是检索开始前读取的版本，检索期间若有写入，该条目下次读取即失效 */
+    public void put(String key, long indexVersion, RetrievalResult result) {
+        if (maxSize <= 0) return;
+        synchronized (entries) {
+            entries.put(key, new Entry(result, indexVersion, System.nanoTime() + ttlNanos));
+            Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+            while (entries.size() > maxSize && it.hasNext()) {
+                it.next();
+                it.remove();
+            }
+        }
+    }
+
+    public Stats stats() {
+        synchronized (entries) {
+            return new Stats(hits.get(), misses.get(), stale.get(), entries.size());
+        }
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+}
@@ -0,0 +1,485 @@
+package com.interview.assistant.config;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 验证向量库的排序、按 experienceId 删除与墓碑压缩，使用手工构造的小维度向量，不依赖 Embedding 模型。
+ */
+class InterviewEmbeddingStoreTest {
+
+    private static TextSegment segment(long experienceId, String text) {
+        return TextSegment.from(text, Metadata.from(Map.of("experienceId", String.valueOf(experienceId), "company", "字节跳动")));
+    }
+
+    @ParameterizedTest
+    @EnumSource(InterviewEmbeddingStore.Storage.class)
+    void findRelevant_ranksByCosine(InterviewEmbeddingStore.Storage storage) {
+        InterviewEmbeddingStore store = new InterviewEmbeddingStore(storage);
+        store.add(Embedding.from(new float[]{1, 0, 0}), segment(1, "x"));
+        store.add(Embedding.from(new float[]{3, 3, 0}), segment(2, "xy"));
+        String zId = store.add(Embedding.from(new float[]{0, 0, 5}), segment(3, "z"));
+
+        List<EmbeddingMatch<TextSegment>> matches = store.findRelevant(Embedding.from(new float[]{2, 0, 0}), 5, 0.5);
+
+        assertEquals(2, matches.size());
+        assertEquals("x", matches.get(0).embedded().text());
+        assertEquals(1.0, matches.get(0).score(), 1e-5);
+        assertEquals("xy", matches.get(1).embedded().text());
+        assertEquals(Math.sqrt(0.5), matches.get(1).score(), 1e-5);
+
+        store.remove(zId);
+        assertEquals(2, store.size());
+        assertEquals(Set.of(1L, 2L), store.experienceIds());
+    }
+
+    @ParameterizedTest
+    @EnumSource(InterviewEmbeddingStore.Storage.class)
+    void removeByExperienceId_dropsAllChunksAndSurvivesCompaction(InterviewEmbeddingStore.Storage storage) {
+        InterviewEmbeddingStore store = new InterviewEmbeddingStore(storage);
+        for (int i = 0; i < 3000; i++) {
+            store.add(Embedding.from(new float[]{1, i, 0}), segment(i % 3, "c" + i));
+        }
+        store.removeByExperienceId(0L);
+        store.removeByExperienceId(1L);
+        store.compact();
+
+        assertEquals(1000, store.size());
+        assertTrue(store.allSegments().stream().allMatch(s -> "2".equals(s.metadata().getString("experienceId"))));
+        List<EmbeddingMatch<TextSegment>> matches = store.findRelevant(Embedding.from(new float[]{1, 2, 0}), 3, 0);
+        assertEquals(3, matches.size());
+        assertEquals("c2", matches.get(0).embedded().text());
+
+        for (int i = 0; i < 3000; i++) {
+            store.add(Embedding.from(new float[]{1, i, 0}), segment(7, "n" + i));
+        }
+        assertEquals(4000, store.size(), "压缩释放尾部段后应能继续追加");
+    }
+
+    @Test
+    void segmentStore_restoresHeaderPrefixAndMetadataAfterCompaction() {
+        InterviewEmbeddingStore store = new InterviewEmbeddingStore();
+        TextSegment withDept = TextSegment.from("公司: 腾讯\n部门: WXG\n八股: Go 协程",
+                Metadata.from(Map.of("experienceId", "1", "company", "腾讯", "department", "WXG", "type", "八股_Java")));
+        TextSegment noDept = TextSegment.from("公司: 美团\n部门: \n算法题: 快速排序",
+                Metadata.from(Map.of("experienceId", "2", "company", "美团", "type", "算法")));
+        TextSegment plain = TextSegment.from("自由文本", Metadata.from(Map.of("experienceId", "3", "company", "阿里巴巴")));
+        store.add(Embedding.from(new float[]{0, 1, 0}), segment(9, "tmp"));
+        String id1 = store.add(Embedding.from(new float[]{1, 0, 0}), withDept);
+        store.add(Embedding.from(new float[]{0, 0, 1}), noDept);
+        store.add(Embedding.from(new float[]{1, 1, 1}), plain);
+        store.removeByExperienceId(9L);
+        store.compact();
+
+        Map<String, TextSegment> byText = store.allSegments().stream()
+                .collect(Collectors.toMap(TextSegment::text, s -> s));
+        assertEquals(Set.of(withDept.text(), noDept.text(), plain.text()), byText.keySet());
+        assertEquals(withDept.metadata().toMap(), byText.get(withDept.text()).metadata().toMap());
+        assertEquals(noDept.metadata().toMap(), byText.get(noDept.text()).metadata().toMap());
+        assertEquals(Map.of(1L, "腾讯", 2L, "美团", 3L, "阿里巴巴"), store.experienceMetadata("company"));
+
+        List<InterviewEmbeddingStore.KeywordMatch> hits = store.keywordSearch("协程");
+        assertEquals(1, hits.size());
+        assertEquals(id1, hits.get(0).id(), "关键词命中与向量命中用同一块 id 对齐");
+        assertEquals(id1, store.findRelevant(Embedding.from(new float[]{1, 0, 0}), 1, 0).get(0).embeddingId());
+    }
+
+    @Test
+    void hnsw_recallCloseToFlat_evenAfterRemovalAndCompaction() {
+        InterviewEmbeddingStore flat = new InterviewEmbeddingStore();
+        InterviewEmbeddingStore hnsw = new InterviewEmbeddingStore(new InterviewEmbeddingStore.Options()
+                .index(InterviewEmbeddingStore.IndexType.HNSW).hnswM(12).hnswEfSearch(64));
+        Random random = new Random(7);
+        for (int i = 0; i < 4000; i++) {
+            float[] v = randomVector(random, 32);
+            TextSegment seg = segment(i % 400, "c" + i);
+            flat.add(Embedding.from(v), seg);
+            hnsw.add(Embedding.from(v), seg);
+        }
+        for (long e = 0; e < 150; e++) {
+            flat.removeByExperienceId(e);
+            hnsw.removeByExperienceId(e);
+        }
+        hnsw.compact();
+        assertEquals(flat.size(), hnsw.size());
+
+        int found = 0;
+        int total = 0;
+        for (int q = 0; q < 50; q++) {
+            Embedding query = Embedding.from(randomVector(random, 32));
+            Set<String> exact = flat.findRelevant(query, 10, -1).stream().map(m -> m.embedded().text()).collect(Collectors.toSet());
+            List<EmbeddingMatch<TextSegment>> approx = hnsw.findRelevant(query, 10, -1);
+            assertEquals(10, approx.size());
+            found += (int) approx.stream().filter(m -> exact.contains(m.embedded().text())).count();
+            total += exact.size();
+        }
+        assertTrue(found >= total * 0.9, "HNSW recall@10 too low: " + found + "/" + total);
+    }
+
+    @Test
+    void hnsw_recallAfterRepeatedCompactionsMatchesFreshGraph() {
+        InterviewEmbeddingStore.Options options = new InterviewEmbeddingStore.Options()
+                .index(InterviewEmbeddingStore.IndexType.HNSW).hnswM(8).hnswEfSearch(32);
+        InterviewEmbeddingStore flat = new InterviewEmbeddingStore();
+        InterviewEmbeddingStore compacted = new InterviewEmbeddingStore(options);
+        Map<Long, float[]> live = new LinkedHashMap<>();
+        Random random = new Random(11);
+        long nextId = 0;
+        // 每轮删掉约 30% 的存活块（走断边修补而非整图重建），压缩后再补回同样多的新块
+        for (int round = 0; round <= 6; round++) {
+            for (Long id : List.copyOf(live.keySet())) {
+                if (random.nextDouble() < 0.3) {
+                    live.remove(id);
+                    flat.removeByExperienceId(id);
+                    compacted.removeByExperienceId(id);
+                }
+            }
+            compacted.compact();
+            for (; live.size() < 2000; nextId++) {
+                float[] v = randomVector(random, 32);
+                live.put(nextId, v);
+                flat.add(Embedding.from(v), segment(nextId, "c" + nextId));
+                compacted.add(Embedding.from(v), segment(nextId, "c" + nextId));
+            }
+        }
+        InterviewEmbeddingStore fresh = new InterviewEmbeddingStore(options);
+        live.forEach((id, v) -> fresh.add(Embedding.from(v), segment(id, "c" + id)));
+        assertEquals(fresh.size(), compacted.size());
+
+        int freshFound = 0;
+        int compactedFound = 0;
+        for (int q = 0; q < 200; q++) {
+            Embedding query = Embedding.from(randomVector(random, 32));
+            Set<String> exact = flat.findRelevant(query, 10, -1).stream().map(m -> m.embedded().text()).collect(Collectors.toSet());
+            freshFound += (int) fresh.findRelevant(query, 10, -1).stream().filter(m -> exact.contains(m.embedded().text())).count();
+            compactedFound += (int) compacted.findRelevant(query, 10, -1).stream().filter(m -> exact.contains(m.embedded().text())).count();
+        }
+        assertTrue(compactedFound >= freshFound * 0.95,
+                "多轮压缩后的 recall 明显低于新建图: " + compactedFound + " vs " + freshFound);
+    }
+
+    @Test
+    void int8_quantizedScanKeepsRecall_andRerankRestoresExactScores() {
+        InterviewEmbeddingStore flat = new InterviewEmbeddingStore();
+        InterviewEmbeddingStore coarse = new InterviewEmbeddingStore(new InterviewEmbeddingStore.Options()
+                .quantization(InterviewEmbeddingStore.Quantization.INT8).rerankFactor(0));
+        InterviewEmbeddingStore reranked = new InterviewEmbeddingStore(new InterviewEmbeddingStore.Options()
+                .storage(InterviewEmbeddingStore.Storage.OFF_HEAP)
+                .quantization(InterviewEmbeddingStore.Quantization.INT8).rerankFactor(4));
+        Random random = new Random(3);
+        for (int i = 0; i < 3000; i++) {
+            float[] v = randomVector(random, 64);
+            TextSegment seg = segment(i, "c" + i);
+            flat.add(Embedding.from(v), seg);
+            coarse.add(Embedding.from(v), seg);
+            reranked.add(Embedding.from(v), seg);
+        }
+        int coarseFound = 0;
+        int rerankFound = 0;
+        for (int q = 0; q < 30; q++) {
+            Embedding query = Embedding.from(randomVector(random, 64));
+            List<EmbeddingMatch<TextSegment>> exact = flat.findRelevant(query, 10, -1);
+            Set<String> expected = exact.stream().map(m -> m.embedded().text()).collect(Collectors.toSet());
+            coarseFound += (int) coarse.findRelevant(query, 10, -1).stream().filter(m -> expected.contains(m.embedded().text())).count();
+            List<EmbeddingMatch<TextSegment>> approx = reranked.findRelevant(query, 10, -1);
+            rerankFound += (int) approx.stream().filter(m -> expected.contains(m.embedded().text())).count();
+            assertEquals(exact.get(0).score(), approx.get(0).score(), 1e-5, "精排后分数应为原向量余弦");
+        }
+        assertTrue(coarseFound >= 300 * 0.8, "INT8 recall@10 too low: " + coarseFound);
+        assertTrue(rerankFound >= 300 * 0.98, "INT8+rerank recall@10 too low: " + rerankFound);
+
+        // 压缩把第二段的行搬进第一段：量化码原样拷贝，分数与搬移前逐位一致
+        Embedding query = Embedding.from(randomVector(random, 64));
+        Map<String, Double> before = coarse.findRelevant(query, 3000, -1).stream()
+                .collect(Collectors.toMap(m -> m.embedded().text(), EmbeddingMatch::score));
+        for (long id = 0; id < 2048; id++) coarse.removeByExperienceId(id);
+        coarse.compact();
+        for (EmbeddingMatch<TextSegment> m : coarse.findRelevant(query, 3000, -1)) {
+            assertEquals(before.get(m.embedded().text()), m.score(), 0.0, m.embedded().text());
+        }
+    }
+
+    @Test
+    void parallelScan_matchesSequentialTopK() {
+        InterviewEmbeddingStore sequential = new InterviewEmbeddingStore();
+        InterviewEmbeddingStore parallel = new InterviewEmbeddingStore(new InterviewEmbeddingStore.Options()
+                .parallelism(4).parallelThreshold(1000));
+        Random random = new Random(5);
+        for (int i = 0; i < 40_000; i++) {
+            float[] v = randomVector(random, 16);
+            TextSegment seg = segment(i, "c" + i);
+            sequential.add(Embedding.from(v), seg);
+            parallel.add(Embedding.from(v), seg);
+        }
+        for (long e = 0; e < 40_000; e += 7) {
+            sequential.removeByExperienceId(e);
+            parallel.removeByExperienceId(e);
+        }
+        for (int q = 0; q < 10; q++) {
+            Embedding query = Embedding.from(randomVector(random, 16));
+            List<String> expected = sequential.findRelevant(query, 20, 0.1).stream().map(m -> m.embedded().text()).toList();
+            List<String> actual = parallel.findRelevant(query, 20, 0.1).stream().map(m -> m.embedded().text()).toList();
+            assertEquals(expected, actual);
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(InterviewEmbeddingStore.Storage.class)
+    void snapshot_roundTripRestoresVectorsAndSegments(InterviewEmbeddingStore.Storage storage, @TempDir Path dir) throws Exception {
+        InterviewEmbeddingStore store = new InterviewEmbeddingStore(storage);
+        store.add(Embedding.from(new float[]{1, 0, 0}), segment(1, "x"));
+        store.add(Embedding.from(new float[]{0, 1, 0}), segment(2, "y"));
+        store.add(Embedding.from(new float[]{0, 0, 1}), segment(3, "z"));
+        store.removeByExperienceId(2L);
+        Path file = dir.resolve("rag.snap");
+        store.writeSnapshot(file, "test-model");
+
+        InterviewEmbeddingStore restored = new InterviewEmbeddingStore(storage);
+        assertFalse(restored.loadSnapshot(file, "other-model"), "模型不一致时不应加载");
+        assertTrue(restored.loadSnapshot(file, "test-model"));
+
+        assertEquals(2, restored.size());
+        assertEquals(Set.of(1L, 3L), restored.experienceIds());
+        List<EmbeddingMatch<TextSegment>> matches = restored.findRelevant(Embedding.from(new float[]{0, 0, 2}), 1, 0.5);
+        assertEquals("z", matches.get(0).embedded().text());
+        assertEquals("字节跳动", matches.get(0).embedded().metadata().getString("company"));
+    }
+
+    @Test
+    void snapshot_loadIntoHnswStoreReplacesGraphBuiltOutsideTheLock(@TempDir Path dir) throws Exception {
+        Random random = new Random(11);
+        InterviewEmbeddingStore source = new InterviewEmbeddingStore();
+        List<float[]> vectors = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            float[] v = randomVector(random, 16);
+            vectors.add(v);
+            source.add(Embedding.from(v), segment(i, "v" + i));
+        }
+        Path file = dir.resolve("rag.snap");
+        source.writeSnapshot(file, "test-model");
+
+        InterviewEmbeddingStore store = new InterviewEmbeddingStore(
+                new InterviewEmbeddingStore.Options().index(InterviewEmbeddingStore.IndexType.HNSW).hnswEfSearch(32));
+        store.add(Embedding.from(randomVector(random, 16)), segment(999, "旧内容"));
+        store.setEfSearch(96);
+        assertTrue(store.loadSnapshot(file, "test-model"));
+
+        assertEquals(300, store.size());
+        for (int i = 0; i < 300; i += 7) {
+            assertEquals("v" + i, store.findRelevant(Embedding.from(vectors.get(i)), 1, 0.5).get(0).embedded().text(),
+                    "新图覆盖快照中的全部行");
+        }
+        assertTrue(store.keywordSearch("旧内容").isEmpty());
+    }
+
+    @ParameterizedTest
+    @EnumSource(InterviewEmbeddingStore.Storage.class)
+    void loadSnapshot_truncatedFileLeavesCurrentContentsUntouched(InterviewEmbeddingStore.Storage storage, @TempDir Path dir) throws Exception {
+        InterviewEmbeddingStore source = new InterviewEmbeddingStore(storage);
+        source.add(Embedding.from(new float[]{1, 0}), segment(1, "Kafka 消息"));
+        source.add(Embedding.from(new float[]{0, 1}), segment(2, "JVM 调优"));
+        Path file = dir.resolve("rag.snap");
+        source.writeSnapshot(file, "test-model");
+        byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 3));
+
+        InterviewEmbeddingStore store = new InterviewEmbeddingStore(storage);
+        store.add(Embedding.from(new float[]{0, 1}), segment(7, "Redis 持久化"));
+        assertThrows(IOException.class, () -> store.loadSnapshot(file, "test-model"));
+
+        assertEquals(1, store.size());
+        assertEquals(Set.of(7L), store.experienceIds());
+        assertEquals("Redis 持久化", store.findRelevant(Embedding.from(new float[]{0, 1}), 1, 0.5).get(0).embedded().text());
+        assertEquals(1, store.keywordSearch("redis").size(), "关键词索引也应保持原样");
+        assertTrue(store.keywordSearch("kafka").isEmpty());
+    }
+
+    @Test
+    void analyzer_splitsCjkIntoBigramsAndLatinIntoWords() {
+        assertEquals(List.of("redis", "持久", "久化", "化和", "mysql", "索引"), TextAnalyzer.terms("Redis持久化和MySQL索引"));
+        assertEquals(List.of("c++", "b+", "树"), TextAnalyzer.terms("C++ / B+树"));
+    }
+
+    @Test
+    void keywordSearch_bm25RanksMixedChineseQueryAndSkipsRemoved() {
+        InterviewEmbeddingStore store = new InterviewEmbeddingStore();
+        store.add(Embedding.from(new float[]{1, 0}), segment(1, "Redis持久化 RDB/AOF，Redis 集群"));
+        store.add(Embedding.from(new float[]{0, 1}), segment(2, "MySQL 索引 B+树、事务隔离级别"));
+        store.add(Embedding.from(new float[]{1, 1}), segment(3, "Kafka 消息可靠性"));
+
+        Map<String, Double> scores = store.keywordSearch("Redis持久化和MySQL索引").stream()
+                .collect(Collectors.toMap(m -> m.segment().text(), InterviewEmbeddingStore.KeywordMatch::score));
+        assertEquals(2, scores.size(), "整句中文查询也应命中 Redis 与 MySQL 两块");
+        assertTrue(scores.values().stream().allMatch(v -> v > 0 && v <= 1));
+        assertTrue(scores.get("Redis持久化 RDB/AOF，Redis 集群") > scores.get("MySQL 索引 B+树、事务隔离级别"));
+        assertEquals(3, store.keywordSearch("字节跳动").size(), "不带过滤时公司元数据参与关键词匹配");
+        store.add(Embedding.from(new float[]{1, 0}), segment(4, "公司: 字节跳动\n部门: \n八股: Redis 持久化"));
+        assertEquals(List.of("Redis持久化 RDB/AOF，Redis 集群"),
+                store.keywordSearch("Redis", null, 1).stream().map(m -> m.segment().text()).toList(),
+                "只保留分数最高的 limit 个");
+        List<InterviewEmbeddingStore.KeywordMatch> filtered = store.keywordSearch("字节跳动 Redis",
+                InterviewEmbeddingStore.SearchFilter.of("字节跳动", null), 10);
+        assertEquals(2, filtered.size(), "与过滤条件重复的查询词不参与打分，只按 Redis 命中");
+        assertTrue(filtered.get(0).score() >= filtered.get(1).score());
+        String runnerUp = filtered.get(1).id();
+        Map<String, Double> direct = store.keywordScores("Redis", null, List.of(runnerUp, "missing"));
+        assertEquals(Set.of(runnerUp), direct.keySet(), "limit 之外的块也能按 id 直接打分");
+        assertEquals(filtered.get(1).score(), direct.get(runnerUp), 1e-6, "与 keywordSearch 同一打分口径");
+        assertTrue(store.keywordScores("字节跳动", InterviewEmbeddingStore.SearchFilter.of("字节跳动", null),
+                List.of(runnerUp)).isEmpty(), "带过滤时与过滤值重复的词同样不参与补分");
+        store.removeByExperienceId(4L);
+
+        store.removeByExperienceId(1L);
+        assertTrue(store.keywordSearch("redis").isEmpty());
+    }
+
+    @ParameterizedTest
+    @EnumSource(InterviewEmbeddingStore.IndexType.class)
+    void filter_pushDownOnlyReturnsMatchingPartition(InterviewEmbeddingStore.IndexType index) {
+        InterviewEmbeddingStore store = new InterviewEmbeddingStore(new InterviewEmbeddingStore.Options().index(index));
+        Random random = new Random(11);
+        String[] companies = {"字节跳动", "阿里巴巴", "腾讯", "美团"};
+        for (int i = 0; i < 6000; i++) {
+            Map<String, String> meta = Map.of("experienceId", String.valueOf(i / 3), "company", companies[i % 4],
+                    "type", i % 2 == 0 ? "实习" : "八股_Java");
+            store.add(Embedding.from(randomVector(random, 16)), TextSegment.from("c" + i, Metadata.from(meta)));
+        }
+        for (long e = 0; e < 600; e++) store.removeByExperienceId(e);
+
+        InterviewEmbeddingStore.SearchFilter filter = new InterviewEmbeddingStore.SearchFilter("腾讯", null, Set.of("实习"));
+        Embedding query = Embedding.from(randomVector(random, 16));
+        List<EmbeddingMatch<TextSegment>> matches = store.findRelevant(query, 10, -1, filter);
+        assertEquals(10, matches.size());
+        for (EmbeddingMatch<TextSegment> m : matches) {
+            assertEquals("腾讯", m.embedded().metadata().getString("company"));
+            assertEquals("实习", m.embedded().metadata().getString("type"));
+            assertTrue(Long.parseLong(m.embedded().metadata().getString("experienceId")) >= 600);
+        }
+        assertTrue(store.findRelevant(query, 10, -1, InterviewEmbeddingStore.SearchFilter.of("不存在", null)).isEmpty());
+        assertTrue(store.keywordSearch("字节跳动", InterviewEmbeddingStore.SearchFilter.of("腾讯", null)).isEmpty());
+    }
+
+    @ParameterizedTest
+    @EnumSource(InterviewEmbeddingStore.IndexType.class)
+    void search_doesNotWaitForWriters(InterviewEmbeddingStore.IndexType index) throws Exception {
+        InterviewEmbeddingStore store = new InterviewEmbeddingStore(new InterviewEmbeddingStore.Options().index(index));
+        Random random = new Random(3);
+        for (int i = 0; i < 200; i++) {
+            store.add(Embedding.from(randomVector(random, 16)), segment(i, "c" + i));
+        }
+        ReentrantLock writeLock = (ReentrantLock) ReflectionTestUtils.getField(store, "writeLock");
+        CountDownLatch held = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread writer = new Thread(() -> {
+            writeLock.lock();
+            try {
+                held.countDown();
+                release.await();
+            } catch (InterruptedException ignored) {
+                Thread.currentThread().interrupt();
+            } finally {
+                writeLock.unlock();
+            }
+        });
+        writer.start();
+        held.await();
+        try {
+            // 写锁被长时间占用（如大批量写入、压缩补追加）时检索照常返回
+            assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+                assertEquals(10, store.findRelevant(Embedding.from(randomVector(random, 16)), 10, -1).size());
+                assertEquals(10, store.keywordSearch("字节跳动", null, 10).size());
+                assertEquals(200, store.size());
+                assertEquals(200, store.allSegments().size());
+            });
+        } finally {
+            release.countDown();
+            writer.join();
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(InterviewEmbeddingStore.IndexType.class)
+    void search_seesConsistentViewWhileRowsAreAddedRemovedAndCompacted(InterviewEmbeddingStore.IndexType index)
+            throws Exception {
+        InterviewEmbeddingStore store = new InterviewEmbeddingStore(new InterviewEmbeddingStore.Options().index(index));
+        Random random = new Random(17);
+        int dim = 16;
+        float[][] anchors = new float[20][];
+        for (int i = 0; i < anchors.length; i++) {
+            anchors[i] = randomVector(random, dim);
+            store.add(Embedding.from(anchors[i]), TextSegment.from("anchor" + i + " 锚点",
+                    Metadata.from(Map.of("experienceId", String.valueOf(1_000_000 + i), "company", "锚点公司"))));
+        }
+        List<Long> churn = new ArrayList<>();
+        for (long e = 0; e < 1000; e++) {
+            store.add(Embedding.from(randomVector(random, dim)), segment(e, "c" + e));
+            churn.add(e);
+        }
+        // 写线程反复删掉一批、补上一批并压缩；锚点从不删除，任何时刻都应能被检索到
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread writer = new Thread(() -> {
+            try {
+                Random r = new Random(23);
+                long next = churn.size();
+                for (int round = 0; round < 30; round++) {
+                    for (int i = 0; i < 400; i++) store.removeByExperienceId(churn.remove(r.nextInt(churn.size())));
+                    List<Embedding> embeddings = new ArrayList<>();
+                    List<TextSegment> segments = new ArrayList<>();
+                    for (; churn.size() < 1000; next++) {
+                        churn.add(next);
+                        embeddings.add(Embedding.from(randomVector(r, dim)));
+                        segments.add(segment(next, "c" + next));
+                    }
+                    store.addAll(embeddings, segments);
+                    store.compact();
+                }
+            } catch (Throwable t) {
+                failure.set(t);
+            }
+        });
+        writer.start();
+        int checks = 0;
+        while (writer.isAlive() || checks == 0) {
+            int a = checks++ % anchors.length;
+            List<EmbeddingMatch<TextSegment>> top = store.findRelevant(Embedding.from(anchors[a]), 1, -1);
+            assertEquals("anchor" + a + " 锚点", top.get(0).embedded().text());
+            assertEquals(1.0, top.get(0).score(), 1e-3);
+            assertEquals(anchors.length, store.keywordSearch("锚点", null, 50).size());
+            assertEquals(anchors.length, store.filteredSize(InterviewEmbeddingStore.SearchFilter.of("锚点公司", null)));
+        }
+        writer.join();
+        assertNull(failure.get());
+        assertEquals(anchors.length + 1000, store.size());
+    }
+
+    private static float[] randomVector(Random random, int dim) {
+        float[] v = new float[dim];
+        for (int i = 0; i < dim; i++) v[i] = (float) random.nextGaussian();
+        return v;
+    }
+}
@@ -0,0 +1,73 @@
+package com.interview.assistant.config;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.model.embedding.onnx.allminilml6v2.AllMiniLmL6V2EmbeddingModel;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 验证本地 Embedding 会话池与单实例 AllMiniLM 向量一致、可并发调用并记录耗时分位数。
+ */
+class PooledLocalEmbeddingModelTest {
+
+    @Test
+    void pooledSessions_matchSingleModelAndRecordLatency() {
+        PooledLocalEmbeddingModel pooled = new PooledLocalEmbeddingModel(2, 1, true);
+        assertEquals(EmbeddingModels.ALL_MINILM_L6_V2, EmbeddingModels.idOf(pooled));
+
+        float[] expected = new AllMiniLmL6V2EmbeddingModel().embed("Redis 持久化").content().vector();
+        assertArrayEquals(expected, pooled.embed("Redis 持久化").content().vector(), 1e-5f);
+
+        List<CompletableFuture<Embedding>> futures = IntStream.range(0, 8)
+                .mapToObj(i -> CompletableFuture.supplyAsync(() -> pooled.embed("并发查询 " + i).content()))
+                .toList();
+        futures.forEach(f -> assertEquals(384, f.join().dimension()));
+
+        PooledLocalEmbeddingModel.Stats stats = pooled.stats();
+        assertEquals(9, stats.calls(), "预热不计入统计");
+        assertEquals(2, stats.idle());
+        assertTrue(stats.p50Ms() > 0 && stats.p99Ms() >= stats.p50Ms());
+
+        pooled.close();
+        assertThrows(IllegalStateException.class, () -> pooled.embed("关闭后"), "会话释放后不可再借出");
+        pooled.close();
+    }
+
+    @Test
+    void close_whileEmbedsAreRunning_neverLeavesCallersBlocked() throws Exception {
+        PooledLocalEmbeddingModel pooled = new PooledLocalEmbeddingModel(1, 1, false);
+        CountDownLatch started = new CountDownLatch(4);
+        ExecutorService threads = Executors.newFixedThreadPool(4);
+        List<CompletableFuture<Integer>> callers = IntStream.range(0, 4)
+                .mapToObj(i -> CompletableFuture.supplyAsync(() -> {
+                    started.countDown();
+                    int ok = 0;
+                    try {
+                        while (true) {
+                            pooled.embed("并发关闭 " + i + " " + ok);
+                            ok++;
+                        }
+                    } catch (IllegalStateException closed) {
+                        return ok;
+                    }
+                }, threads))
+                .toList();
+        started.await();
+        Thread.sleep(50);
+        pooled.close();
+        for (CompletableFuture<Integer> caller : callers) {
+            assertNotNull(caller.get(5, TimeUnit.SECONDS), "关闭后排队等待会话的调用方应及时失败返回");
+        }
+        assertThrows(IllegalStateException.class, () -> pooled.embed("关闭后"));
+        threads.shutdownNow();
+    }
+}
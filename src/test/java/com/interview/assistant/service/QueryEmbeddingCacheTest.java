@@ -0,0 +1,75 @@
+package com.interview.assistant.service;
+
+import dev.langchain4j.data.embedding.Embedding;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 验证查询向量缓存的 single-flight 合并、文本规范化与 LRU 淘汰。
+ */
+class QueryEmbeddingCacheTest {
+
+    @Test
+    void concurrentMisses_collapseIntoOneUpstreamCall() throws Exception {
+        QueryEmbeddingCache cache = new QueryEmbeddingCache(16, 60);
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Embedding>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(pool.submit(() -> cache.get("m", "Redis 持久化", text -> {
+                    calls.incrementAndGet();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return Embedding.from(new float[]{1, 2});
+                })));
+            }
+            Thread.sleep(100);
+            release.countDown();
+            for (Future<Embedding> f : futures) {
+                assertArrayEquals(new float[]{1, 2}, f.get().vector());
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        assertEquals(1, calls.get());
+        assertEquals(8, cache.stats().hits() + cache.stats().misses() + cache.stats().coalesced());
+        assertEquals(1, cache.stats().misses());
+    }
+
+    @Test
+    void normalizedTextSharesEntry_andLruEvictsOldest() {
+        QueryEmbeddingCache cache = new QueryEmbeddingCache(2, 60);
+        AtomicInteger calls = new AtomicInteger();
+        cache.get("m", "  Redis   持久化 ", text -> {
+            assertEquals("Redis 持久化", text);
+            calls.incrementAndGet();
+            return Embedding.from(new float[]{1});
+        });
+        cache.get("m", "Redis 持久化", text -> fail("应命中缓存"));
+        cache.get("other", "Redis 持久化", text -> {
+            calls.incrementAndGet();
+            return Embedding.from(new float[]{2});
+        });
+        cache.get("m", "MySQL", text -> {
+            calls.incrementAndGet();
+            return Embedding.from(new float[]{3});
+        });
+        assertEquals(3, calls.get());
+        assertEquals(2, cache.stats().size());
+        assertEquals(1, cache.stats().hits());
+    }
+}
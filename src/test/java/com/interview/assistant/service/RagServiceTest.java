@@ -1,16 +1,44 @@
 package com.interview.assistant.service;
 
+import com.interview.assistant.capability.ExperienceCleaningCapability;
 import com.interview.assistant.config.InterviewEmbeddingStore;
+import com.interview.assistant.entity.ChunkEmbedding;
 import com.interview.assistant.entity.InterviewExperience;
+import com.interview.assistant.repository.ChunkEmbeddingRepository;
+import com.interview.assistant.repository.InterviewExperienceRepository;
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
 import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
 import dev.langchain4j.model.embedding.onnx.allminilml6v2.AllMiniLmL6V2EmbeddingModel;
+import dev.langchain4j.model.output.Response;
 import dev.langchain4j.store.embedding.EmbeddingStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.test.util.ReflectionTestUtils;
 
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyIterable;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 /**
  * 验证「按字段分块 + 结构化检索」RAG 流程：索引后能按类型（实习/项目/八股/算法）返回聚合结果。
@@ -107,4 +135,498 @@ class RagServiceTest {
         assertTrue(other.stream().noneMatch(s -> s.contains("字节")),
                 "指定阿里/中间件时不应返回字节的面经（或返回空）");
     }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void reindex_unchangedChunksHitContentHashCache() {
+        Map<String, ChunkEmbedding> table = new HashMap<>();
+        ChunkEmbeddingRepository repository = mock(ChunkEmbeddingRepository.class);
+        when(repository.saveAll(anyIterable())).thenAnswer(inv -> {
+            ((Iterable<ChunkEmbedding>) inv.getArgument(0)).forEach(ce -> table.put(ce.getContentHash(), ce));
+            return List.of();
+        });
+        when(repository.findAllById(any())).thenAnswer(inv -> ((Collection<String>) inv.getArgument(0)).stream()
+                .map(table::get).filter(java.util.Objects::nonNull).toList());
+        AtomicInteger calls = new AtomicInteger();
+        EmbeddingModel counting = new EmbeddingModel() {
+            @Override
+            public Response<List<Embedding>> embedAll(List<TextSegment> segments) {
+                calls.addAndGet(segments.size());
+                return Response.from(segments.stream().map(s -> Embedding.from(new float[]{s.text().length(), 1})).toList());
+            }
+        };
+        RagService service = new RagService(counting, store, new QueryEmbeddingCache(16, 60),
+                new ChunkEmbeddingCache(repository, true), "", RagShardClient.local(), RetrievalResultCache.disabled(),
+                RetrievalMetrics.noop());
+
+        InterviewExperience exp = new InterviewExperience();
+        exp.setId(20L);
+        exp.setCompany("腾讯");
+        exp.setContent("WXG 后端一面。");
+        exp.setBaguQuestions("Go 协程与 Java 线程区别。");
+        service.indexExperience(exp);
+        int first = calls.get();
+        assertEquals(2, first);
+
+        service.indexExperience(exp);
+        assertEquals(first, calls.get(), "文本未变时不应再调用 Embedding");
+        exp.setBaguQuestions("Redis 集群。");
+        service.indexExperience(exp);
+        assertEquals(first + 1, calls.get(), "只对改动的块重新 Embedding");
+        assertEquals(2, store.size());
+    }
+
+    @Test
+    void indexExperiences_flushesByBatchLimits_andSerializesSameExperience() throws Exception {
+        List<Integer> batches = Collections.synchronizedList(new ArrayList<>());
+        EmbeddingModel slow = new EmbeddingModel() {
+            @Override
+            public Response<List<Embedding>> embedAll(List<TextSegment> segments) {
+                batches.add(segments.size());
+                try {
+                    Thread.sleep(30);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return Response.from(segments.stream().map(s -> Embedding.from(new float[]{1, s.text().length()})).toList());
+            }
+        };
+        RagService service = new RagService(slow, store);
+        ReflectionTestUtils.setField(service, "batchSize", 3);
+        ReflectionTestUtils.setField(service, "batchMaxChars", 200);
+
+        // 4 条面经 × 2 块，按块数封顶：3 + 3 + 2
+        List<InterviewExperience> small = new ArrayList<>();
+        for (long id = 90; id < 94; id++) {
+            InterviewExperience exp = new InterviewExperience();
+            exp.setId(id);
+            exp.setContent("一面" + id);
+            exp.setBaguQuestions("八股" + id);
+            small.add(exp);
+        }
+        service.indexExperiences(small);
+        assertEquals(List.of(3, 3, 2), batches);
+
+        // 两个约 140 字的块相加超过 200 字，按字符数封顶分成两批
+        batches.clear();
+        List<InterviewExperience> large = new ArrayList<>();
+        for (long id = 94; id < 96; id++) {
+            InterviewExperience exp = new InterviewExperience();
+            exp.setId(id);
+            exp.setContent("长".repeat(120));
+            large.add(exp);
+        }
+        service.indexExperiences(large);
+        assertEquals(List.of(1, 1), batches);
+
+        // 队列 worker 与增量同步并发索引同一面经：删旧块与写新块串行，不会留下重复块
+        InterviewExperience same = small.get(0);
+        List<CompletableFuture<Void>> writers = IntStream.range(0, 4)
+                .mapToObj(i -> CompletableFuture.runAsync(() -> service.indexExperience(same)))
+                .toList();
+        writers.forEach(CompletableFuture::join);
+        assertEquals(2, store.findRelevant(Embedding.from(new float[]{1, 0}), 100, -1,
+                InterviewEmbeddingStore.SearchFilter.of(null, null)).stream()
+                .filter(m -> "90".equals(m.embedded().metadata().getString("experienceId"))).count());
+        assertEquals(10, store.size());
+    }
+
+    @Test
+    void sync_onlyReindexesChangedExperiencesAndRemovesDeleted() {
+        InterviewExperience a = new InterviewExperience();
+        a.setId(31L);
+        a.setCompany("美团");
+        a.setBaguQuestions("Kafka 原理。");
+        InterviewExperience b = new InterviewExperience();
+        b.setId(32L);
+        b.setCompany("阿里巴巴");
+        b.setBaguQuestions("线程池参数。");
+        List<InterviewExperience> rows = new java.util.ArrayList<>(List.of(a, b));
+        InterviewExperienceRepository repository = mock(InterviewExperienceRepository.class);
+        when(repository.findAll(any(Pageable.class))).thenAnswer(inv -> {
+            Pageable p = inv.getArgument(0);
+            int from = (int) Math.min(p.getOffset(), rows.size());
+            int to = Math.min(from + p.getPageSize(), rows.size());
+            return new PageImpl<>(rows.subList(from, to), p, rows.size());
+        });
+        RagIndexSyncService sync = new RagIndexSyncService(repository, ragService);
+
+        RagIndexSyncService.SyncReport first = sync.sync();
+        assertEquals(2, first.added());
+        assertEquals(RagService.contentVersionOf(a), ragService.indexedVersions().get(31L));
+
+        RagIndexSyncService.SyncReport unchanged = sync.sync();
+        assertEquals(0, unchanged.added() + unchanged.changed() + unchanged.removed());
+
+        b.setBaguQuestions("HashMap 扩容。");
+        rows.remove(a);
+        RagIndexSyncService.SyncReport second = sync.sync();
+        assertEquals(1, second.changed());
+        assertEquals(1, second.removed());
+        assertEquals(java.util.Set.of(32L), ragService.indexedExperienceIds());
+    }
+
+    @Test
+    void indexQueue_retriesFailedBatchPerExperienceWithBackoff() throws Exception {
+        AtomicInteger transientFailures = new AtomicInteger(1);
+        EmbeddingModel flaky = new EmbeddingModel() {
+            @Override
+            public Response<List<Embedding>> embedAll(List<TextSegment> segments) {
+                if (transientFailures.getAndDecrement() > 0) throw new IllegalStateException("rate limited");
+                if (segments.stream().anyMatch(s -> s.text().contains("坏数据"))) throw new IllegalStateException("bad input");
+                return Response.from(segments.stream().map(s -> Embedding.from(new float[]{s.text().length(), 1})).toList());
+            }
+        };
+        RagService service = new RagService(flaky, store);
+        RagIndexQueue queue = new RagIndexQueue(service, 4, 1, 2, 3,
+                java.time.Duration.ofMillis(1), java.time.Duration.ofSeconds(5));
+        try {
+            List<InterviewExperience> batch = new ArrayList<>();
+            for (long id = 40; id < 46; id++) {
+                InterviewExperience exp = new InterviewExperience();
+                exp.setId(id);
+                exp.setCompany("快手");
+                exp.setBaguQuestions(id == 43 ? "坏数据" : "第 " + id + " 篇八股。");
+                batch.add(exp);
+            }
+            queue.submit(batch);
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (!queue.isIdle() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            RagIndexQueue.Status status = queue.status();
+            assertEquals(5, status.done(), "同批其它面经逐条重试后成功");
+            assertEquals(1, status.failed(), "只有坏数据那一条失败");
+            assertEquals(3, status.retries(), "逐条处理的首次尝试不算重试，只有坏数据那一条重试了 max-retries 次");
+            assertTrue(status.throughputPerSec() > 0);
+            assertEquals(java.util.Set.of(40L, 41L, 42L, 44L, 45L), service.indexedExperienceIds());
+        } finally {
+            queue.shutdown();
+        }
+    }
+
+    @Test
+    void search_widensCandidatesUntilKResultsSurviveThePerExperienceCap() {
+        InterviewEmbeddingStore crowded = new InterviewEmbeddingStore();
+        RagService service = new RagService(segments -> Response.from(segments.stream()
+                .map(seg -> Embedding.from(new float[]{1, 0})).toList()), crowded);
+        // 面经 1 的 40 个块分数最高，占满默认的 25 个候选，去重后只剩 2 条
+        for (int i = 0; i < 40; i++) {
+            crowded.add(Embedding.from(new float[]{1, 0}), chunk(1L, "面经一 第" + i + "块"));
+        }
+        for (long id = 2; id <= 4; id++) {
+            crowded.add(Embedding.from(new float[]{1, 0.3f}), chunk(id, "面经" + id));
+        }
+
+        List<String> results = service.search("q", 4);
+
+        assertEquals(4, results.size(), "其它面经存在时应凑满 k 条");
+        assertEquals(2, results.stream().filter(t -> t.startsWith("面经一")).count());
+        assertEquals(5, service.search("q", 10).size(), "语料不足 k 条时返回全部可用结果");
+    }
+
+    @Test
+    void search_andStructuredSearch_keepTheirOriginalCandidateCounts() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        InterviewEmbeddingStore ranked = new InterviewEmbeddingStore();
+        RagService service = new RagService(segments -> Response.from(segments.stream()
+                .map(seg -> Embedding.from(new float[]{1, 0})).toList()), ranked, new QueryEmbeddingCache(16, 60),
+                ChunkEmbeddingCache.disabled(), "", RagShardClient.local(), RetrievalResultCache.disabled(),
+                new RetrievalMetrics(registry, Duration.ZERO));
+        for (long id = 1; id <= 40; id++) {
+            ranked.add(Embedding.from(new float[]{1, id * 0.01f}), chunk(id, "面经" + id));
+        }
+
+        assertEquals(List.of("面经1", "面经2", "面经3", "面经4", "面经5"), service.search("q", 5));
+        assertEquals(20, registry.get("rag.retrieval.candidates").tag("source", "vector").summary().max(),
+                "search() 的候选数下限仍为 max(k * 3, 20)");
+        Map<String, String> byType = service.searchStructuredForDeepQuestions("q", null, null);
+        assertEquals(25, byType.get("八股_Java").split("\n\n---\n\n").length, "结构化检索仍取 25 个候选");
+        assertTrue(byType.get("八股_Java").startsWith("面经1\n\n---\n\n面经2"));
+    }
+
+    @Test
+    void byType_groupsChunksPerExperienceOrderedByBestScore() {
+        RetrievalResult result = new RetrievalResult(List.of(
+                new RetrievalResult.Candidate(chunk(1, "A-1"), 0.9, 1, "八股_Java"),
+                new RetrievalResult.Candidate(chunk(2, "B-1"), 0.8, 2, "八股_Java"),
+                new RetrievalResult.Candidate(chunk(1, "A-2"), 0.7, 1, "八股_Java"),
+                new RetrievalResult.Candidate(chunk(2, "B-2"), 0.6, 2, "八股_Java"),
+                new RetrievalResult.Candidate(chunk(1, "A-3"), 0.5, 1, "八股_Java")), 2);
+
+        assertEquals("A-1\n\n---\n\nA-2\n\n---\n\nB-1\n\n---\n\nB-2",
+                result.byType(List.of("八股_Java"), 600).get("八股_Java"),
+                "同一面经的块连续出现，面经按最高分排序，每个面经最多 2 块");
+        assertEquals(List.of("A-1", "B-1", "A-2", "B-2"), result.top(10), "top() 仍按全局分数平铺");
+    }
+
+    private static TextSegment chunk(long experienceId, String text) {
+        return TextSegment.from(text, Metadata.from(Map.of("experienceId", String.valueOf(experienceId), "type", "八股_Java")));
+    }
+
+    @Test
+    void shardedRetrieve_mergesPeerTopKAndToleratesSlowShard() {
+        AllMiniLmL6V2EmbeddingModel model = new AllMiniLmL6V2EmbeddingModel();
+        String nodes = "http://shard-0,http://shard-1,http://shard-2";
+        Map<String, RagService> peers = new HashMap<>();
+        RagShardClient[] clients = new RagShardClient[3];
+        RagService[] services = new RagService[3];
+        for (int i = 0; i < 3; i++) {
+            clients[i] = new RagShardClient(3, i, nodes, java.time.Duration.ofMillis(500), "", null) {
+                @Override
+                protected reactor.core.publisher.Mono<List<ShardHit>> fetch(String node, ShardQuery query) {
+                    if (node.endsWith("2")) {
+                        return reactor.core.publisher.Mono.never();
+                    }
+                    return reactor.core.publisher.Mono.fromCallable(() -> peers.get(node).retrieveShard(query));
+                }
+            };
+            services[i] = new RagService(model, new InterviewEmbeddingStore(), new QueryEmbeddingCache(16, 60),
+                    ChunkEmbeddingCache.disabled(), "", clients[i], RetrievalResultCache.disabled(),
+                    RetrievalMetrics.noop());
+            peers.put("http://shard-" + i, services[i]);
+        }
+        List<InterviewExperience> all = new ArrayList<>();
+        for (long id = 1; id <= 9; id++) {
+            InterviewExperience exp = new InterviewExperience();
+            exp.setId(id);
+            exp.setCompany("字节跳动");
+            exp.setBaguQuestions("Redis 持久化与 MySQL 索引，第 " + id + " 篇。");
+            all.add(exp);
+        }
+        for (RagService s : services) s.indexExperiences(all);
+        for (int i = 0; i < 3; i++) {
+            for (long id : services[i].indexedExperienceIds()) {
+                assertEquals(i, clients[i].shardOf(id), "每个节点只索引自己的分片");
+            }
+        }
+
+        List<RetrievalResult.Candidate> merged = services[0].retrieve("Redis 持久化", "字节跳动", null).candidates();
+        java.util.Set<Long> ids = new java.util.HashSet<>();
+        merged.forEach(c -> ids.add(c.experienceId()));
+        java.util.Set<Long> expected = new java.util.HashSet<>(services[0].indexedExperienceIds());
+        expected.addAll(services[1].indexedExperienceIds());
+        assertEquals(expected, ids, "shard-2 超时后只合并 shard-0 与 shard-1 的结果");
+        for (int i = 1; i < merged.size(); i++) {
+            assertTrue(merged.get(i - 1).score() >= merged.get(i).score());
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void shardedUpload_notifiesOwningShardInsteadOfDroppingExperience() {
+        Map<String, List<Long>> pushed = new HashMap<>();
+        RagShardClient[] clients = new RagShardClient[2];
+        for (int i = 0; i < 2; i++) {
+            clients[i] = new RagShardClient(2, i, "http://shard-0,http://shard-1", Duration.ofMillis(500), "", null) {
+                @Override
+                protected reactor.core.publisher.Mono<Void> push(String node, List<Long> ids) {
+                    pushed.computeIfAbsent(node, k -> new ArrayList<>()).addAll(ids);
+                    return reactor.core.publisher.Mono.empty();
+                }
+            };
+        }
+        InterviewExperienceRepository repository = mock(InterviewExperienceRepository.class);
+        when(repository.saveAll(anyIterable())).thenAnswer(inv -> inv.getArgument(0));
+        ExperienceCleaningCapability cleaning = mock(ExperienceCleaningCapability.class);
+        when(cleaning.cleanExperience(any())).thenAnswer(inv -> inv.getArgument(0));
+        RagIndexQueue queue = mock(RagIndexQueue.class);
+        RagService node0 = new RagService(new AllMiniLmL6V2EmbeddingModel(), store, new QueryEmbeddingCache(16, 60),
+                ChunkEmbeddingCache.disabled(), "", clients[0], RetrievalResultCache.disabled(), RetrievalMetrics.noop());
+        InterviewDataService data = new InterviewDataService(repository, node0, queue, clients[0], cleaning);
+
+        List<InterviewExperience> uploaded = new ArrayList<>();
+        for (long id = 1; id <= 4; id++) {
+            InterviewExperience exp = new InterviewExperience();
+            exp.setId(id);
+            exp.setCompany("字节跳动");
+            uploaded.add(exp);
+        }
+        data.saveAll(uploaded);
+
+        List<InterviewExperience> owned = uploaded.stream().filter(e -> clients[0].owns(e.getId())).toList();
+        List<Long> foreign = uploaded.stream().map(InterviewExperience::getId).filter(id -> !clients[0].owns(id)).toList();
+        assertFalse(foreign.isEmpty());
+        verify(queue).submit(owned);
+        assertEquals(foreign, pushed.get("http://shard-1"), "不归本节点的面经通知归属分片同步，而不是丢弃");
+        data.deleteById(foreign.get(0));
+        assertEquals(foreign.size() + 1, pushed.get("http://shard-1").size(), "删除同样通知归属分片");
+
+        // 归属节点：仍在库中的进入索引队列，已删除的从向量库移除
+        InterviewExperienceRepository shared = mock(InterviewExperienceRepository.class);
+        when(shared.findAllById(any())).thenAnswer(inv -> uploaded.stream()
+                .filter(e -> ((Collection<Long>) inv.getArgument(0)).contains(e.getId()))
+                .filter(e -> !e.getId().equals(foreign.get(0)))
+                .toList());
+        RagIndexQueue ownerQueue = mock(RagIndexQueue.class);
+        RagService node1 = new RagService(new AllMiniLmL6V2EmbeddingModel(), new InterviewEmbeddingStore(),
+                new QueryEmbeddingCache(16, 60), ChunkEmbeddingCache.disabled(), "", clients[1],
+                RetrievalResultCache.disabled(), RetrievalMetrics.noop());
+        new InterviewDataService(shared, node1, ownerQueue, clients[1], cleaning).syncOwned(foreign);
+        verify(ownerQueue).submit(uploaded.stream()
+                .filter(e -> foreign.contains(e.getId()) && !e.getId().equals(foreign.get(0))).toList());
+    }
+
+    @Test
+    void resultCache_servesRepeatedQueriesUntilIndexChanges() {
+        RagService service = new RagService(new AllMiniLmL6V2EmbeddingModel(), store, new QueryEmbeddingCache(16, 60),
+                ChunkEmbeddingCache.disabled(), "", RagShardClient.local(), new RetrievalResultCache(16, 60),
+                RetrievalMetrics.noop());
+        InterviewExperience exp = new InterviewExperience();
+        exp.setId(50L);
+        exp.setCompany("字节跳动");
+        exp.setBaguQuestions("Redis 持久化 RDB 与 AOF。");
+        service.indexExperience(exp);
+
+        RetrievalResult first = service.retrieve("字节跳动  后端 Redis", "字节跳动", null);
+        assertSame(first, service.retrieve("字节跳动 后端 Redis", "字节跳动", null), "规范化后相同的查询应命中缓存");
+
+        InterviewExperience other = new InterviewExperience();
+        other.setId(51L);
+        other.setCompany("字节跳动");
+        other.setBaguQuestions("Redis 集群与哨兵。");
+        service.indexExperience(other);
+        RetrievalResult fresh = service.retrieve("字节跳动 后端 Redis", "字节跳动", null);
+        assertNotSame(first, fresh, "索引变化后不应返回旧结果");
+        assertTrue(fresh.candidates().stream().anyMatch(c -> c.experienceId() == 51L));
+        Map<?, ?> stats = (Map<?, ?>) service.stats().get("resultCache");
+        assertEquals(1L, stats.get("hits"));
+        assertEquals(1L, stats.get("stale"));
+
+        // 过滤值带首尾空白时与规范值共用缓存，且按规范值过滤，不会把空结果缓存给规范写法
+        RetrievalResult padded = service.retrieve("Redis 哨兵", " 字节跳动 ", " ");
+        assertFalse(padded.isEmpty());
+        assertSame(padded, service.retrieve("Redis 哨兵", "字节跳动", null));
+    }
+
+    @Test
+    void rebuild_buildsShadowStoreWhileSearchesKeepHittingOldGeneration() {
+        InterviewExperience exp = new InterviewExperience();
+        exp.setId(60L);
+        exp.setCompany("字节跳动");
+        exp.setBaguQuestions("Redis 持久化 RDB 与 AOF。");
+        ragService.indexExperience(exp);
+        InterviewExperience added = new InterviewExperience();
+        added.setId(61L);
+        added.setCompany("字节跳动");
+        added.setBaguQuestions("Kafka 消息可靠性。");
+
+        List<List<String>> duringRebuild = new ArrayList<>();
+        InterviewExperienceRepository repository = mock(InterviewExperienceRepository.class);
+        when(repository.count()).thenReturn(2L);
+        when(repository.findAll(any(Pageable.class))).thenAnswer(inv -> {
+            duringRebuild.add(ragService.search("Redis 持久化", "字节跳动", null, 3));
+            Pageable p = inv.getArgument(0);
+            return new PageImpl<>(List.of(exp, added), p, 2);
+        });
+        RagIndexSyncService sync = new RagIndexSyncService(repository, ragService);
+
+        RagIndexSyncService.RebuildStatus status = sync.rebuild();
+
+        assertEquals(RagIndexSyncService.RebuildState.DONE, status.state());
+        assertEquals(2, status.processed());
+        assertFalse(duringRebuild.get(0).isEmpty(), "重建期间检索仍走旧库");
+        assertEquals(java.util.Set.of(60L, 61L), ragService.indexedExperienceIds());
+        assertFalse(ragService.search("Kafka 消息", "字节跳动", null, 3).isEmpty());
+    }
+
+    @Test
+    void modelSwitch_dualReadsOldNamespaceUntilBackfillCutsOver(@TempDir Path dir) throws Exception {
+        String snapshot = dir.resolve("rag.snap").toString();
+        TwoDimModel oldModel = new TwoDimModel();
+        RagService before = new RagService(oldModel, new InterviewEmbeddingStore(), new QueryEmbeddingCache(16, 60),
+                ChunkEmbeddingCache.disabled(), snapshot, RagShardClient.local(), RetrievalResultCache.disabled(),
+                RetrievalMetrics.noop());
+        InterviewExperience exp = new InterviewExperience();
+        exp.setId(70L);
+        exp.setCompany("美团");
+        exp.setBaguQuestions("Redis 持久化 RDB 与 AOF。");
+        before.indexExperience(exp);
+        before.saveSnapshot();
+
+        InterviewEmbeddingStore current = new InterviewEmbeddingStore();
+        RagService after = new RagService(new ThreeDimModel(), current, new QueryEmbeddingCache(16, 60),
+                ChunkEmbeddingCache.disabled(), snapshot, RagShardClient.local(), RetrievalResultCache.disabled(),
+                RetrievalMetrics.noop());
+        assertFalse(after.restoreSnapshot(), "快照属于旧模型，不能直接加载");
+        List<String> released = new ArrayList<>();
+        assertTrue(after.restoreLegacySnapshot(id -> id.equals("TwoDimModel") ? oldModel : null, released::add));
+        assertTrue(after.migrating());
+        int oldCalls = oldModel.calls.get();
+        assertFalse(after.search("Redis 持久化", "美团", null, 3).isEmpty(), "双读期间旧模型的索引仍可检索");
+        assertEquals(oldCalls + 1, oldModel.calls.get(), "旧库的查询向量由旧模型计算");
+
+        InterviewExperience added = new InterviewExperience();
+        added.setId(71L);
+        added.setCompany("美团");
+        added.setBaguQuestions("Kafka 消息可靠性。");
+        after.indexExperience(added);
+        assertFalse(after.search("Kafka 消息", "美团", null, 3).isEmpty(), "双读期间新写入走新模型的库");
+
+        InterviewExperienceRepository repository = mock(InterviewExperienceRepository.class);
+        when(repository.count()).thenReturn(2L);
+        when(repository.findAll(any(Pageable.class)))
+                .thenAnswer(inv -> new PageImpl<>(List.of(exp, added), inv.getArgument(0), 2));
+        new RagIndexSyncService(repository, after).rebuild();
+
+        assertFalse(after.migrating());
+        assertEquals(List.of("TwoDimModel"), released, "切换完成后释放旧模型");
+        assertEquals(3, after.stats().get("dimension"));
+        assertNull(after.stats().get("migratingFrom"));
+        assertEquals("ThreeDimModel", InterviewEmbeddingStore.snapshotModelId(Path.of(snapshot)), "切换后快照改为新模型");
+        assertFalse(after.search("Redis 持久化", "美团", null, 3).isEmpty());
+    }
+
+    /** 模型 id 取类名，用两个不同维度的确定性模型模拟切换 Embedding 模型 */
+    static class TwoDimModel implements EmbeddingModel {
+        final AtomicInteger calls = new AtomicInteger();
+
+        @Override
+        public Response<List<Embedding>> embedAll(List<TextSegment> segments) {
+            calls.incrementAndGet();
+            return Response.from(segments.stream()
+                    .map(s -> Embedding.from(new float[]{1, s.text().length() % 5 + 1})).toList());
+        }
+    }
+
+    static class ThreeDimModel implements EmbeddingModel {
+        @Override
+        public Response<List<Embedding>> embedAll(List<TextSegment> segments) {
+            return Response.from(segments.stream()
+                    .map(s -> Embedding.from(new float[]{1, 1, s.text().length() % 7 + 1})).toList());
+        }
+    }
+
+    @Test
+    void retrieve_recordsPerStageTimersCandidatesAndCacheOutcome() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        RagService service = new RagService(new AllMiniLmL6V2EmbeddingModel(), store, new QueryEmbeddingCache(16, 60),
+                ChunkEmbeddingCache.disabled(), "", RagShardClient.local(), new RetrievalResultCache(16, 60),
+                new RetrievalMetrics(registry, Duration.ofMillis(1)));
+        InterviewExperience exp = new InterviewExperience();
+        exp.setId(80L);
+        exp.setCompany("字节跳动");
+        exp.setBaguQuestions("Redis 持久化 RDB 与 AOF。");
+        service.indexExperience(exp);
+        InterviewExperience other = new InterviewExperience();
+        other.setId(81L);
+        other.setCompany("腾讯");
+        other.setBaguQuestions("Go 协程调度。");
+        service.indexExperience(other);
+
+        service.retrieve("Redis 持久化", "字节跳动", null);
+        service.retrieve("Redis 持久化", "字节跳动", null);
+
+        for (String stage : List.of("embed", "vector", "keyword", "merge", "filter")) {
+            assertEquals(1, registry.get("rag.retrieval.stage").tag("stage", stage).timer().count(), stage);
+        }
+        assertEquals(2, registry.get("rag.retrieval.total").timer().count());
+        assertEquals(1, registry.get("rag.retrieval.requests").tag("cache", "hit").counter().count());
+        assertEquals(1, registry.get("rag.retrieval.requests").tag("cache", "miss").counter().count());
+        assertTrue(registry.get("rag.retrieval.candidates").tag("source", "returned").summary().totalAmount() > 0);
+        assertEquals(0.5, registry.get("rag.retrieval.selectivity").summary().mean(), 1e-9, "4 个块中 2 个属于字节跳动");
+        assertEquals(4, registry.get("rag.corpus.chunks").gauge().value());
+        assertEquals(1, registry.get("rag.cache.requests").tag("cache", "result").tag("result", "hit")
+                .functionCounter().count());
+    }
 }